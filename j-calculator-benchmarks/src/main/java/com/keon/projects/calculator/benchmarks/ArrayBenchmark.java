@@ -0,0 +1,72 @@
+package com.keon.projects.calculator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+
+/**
+ * Vector and matrix functions over n x n values, against the dot product written out term by term
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArrayBenchmark {
+
+    @Param({ "10", "100" })
+    private int n;
+
+    private CompiledExpression dot;
+    private CompiledExpression expandedDot;
+    private CompiledExpression matmul;
+    private double[] values;
+
+    @Setup
+    public void setUp() {
+        final int size = n * n;
+        final String[] scalars = new String[2 * size];
+        final StringBuilder expanded = new StringBuilder();
+        for (int i = 0; i < size; ++i) {
+            scalars[i] = "a" + i;
+            scalars[size + i] = "b" + i;
+            expanded.append(i == 0 ? "" : " + ").append("a").append(i).append("*b").append(i);
+        }
+        dot = Calculator.compile("dot(a, b)", "a[" + n + "][" + n + "]", "b[" + n + "][" + n + "]");
+        expandedDot = Calculator.compile(expanded.toString(), scalars);
+        matmul = Calculator.compile("matmul(a, b)", "a[" + n + "][" + n + "]", "b[" + n + "][" + n + "]");
+        values = new double[2 * size];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (i % 11) / 11.0;
+        }
+    }
+
+    @Benchmark
+    public double dot() {
+        return dot.eval(values);
+    }
+
+    @Benchmark
+    public double expandedDot() {
+        return expandedDot.eval(values);
+    }
+
+    @Benchmark
+    public double[] matmul() {
+        return matmul.evalArray(values);
+    }
+}
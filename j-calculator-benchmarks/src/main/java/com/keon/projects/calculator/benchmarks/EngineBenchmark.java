@@ -0,0 +1,78 @@
+package com.keon.projects.calculator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keon.projects.calculator.logic.CalculatorEngine;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.Gradient;
+
+/**
+ * The throughput of one {@link CalculatorEngine} shared by the benchmark threads. Run with -t 1, then -t N up to the
+ * core count: the throughput should grow with the threads, as they share nothing mutable but the engine's cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    private static final String[] EXPRESSIONS = { "1 + 2*3", "sqrt(2)*'pi'", "max(1, 5, 3) - min(4, 2)", "sum(k, 1, 100, 1/k^2)",
+            "if(3 > 2, ln(10), 0)" };
+
+    private CalculatorEngine engine;
+    private CompiledExpression compiled;
+    private Gradient gradient;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        double x;
+        final double[] values = new double[2];
+        final double[] gradient = new double[2];
+    }
+
+    @Setup
+    public void setUp() {
+        engine = new CalculatorEngine();
+        compiled = engine.compile(Shape.FUNCTION_HEAVY.expression(), Shape.FUNCTION_HEAVY.variables());
+        gradient = engine.compile("x^3*y + sin(x*y)", "x", "y").gradient();
+    }
+
+    /**
+     * Looks expressions up in the shared cache
+     */
+    @Benchmark
+    public double eval(final Cursor cursor) {
+        cursor.next = (cursor.next + 1) % EXPRESSIONS.length;
+        return engine.eval(EXPRESSIONS[cursor.next]);
+    }
+
+    @Benchmark
+    public double evalCompiled(final Cursor cursor) {
+        cursor.x = cursor.x > 1 ? 0 : cursor.x + 1e-3;
+        return compiled.eval(cursor.x, 2);
+    }
+
+    /**
+     * Exercises the per-thread scratch of gradients
+     */
+    @Benchmark
+    public double gradient(final Cursor cursor) {
+        cursor.values[0] = cursor.values[0] > 1 ? 0 : cursor.values[0] + 1e-3;
+        cursor.values[1] = 2;
+        return gradient.eval(cursor.values, cursor.gradient) + cursor.gradient[0];
+    }
+}
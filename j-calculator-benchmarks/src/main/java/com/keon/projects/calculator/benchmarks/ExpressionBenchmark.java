@@ -0,0 +1,85 @@
+package com.keon.projects.calculator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+
+/**
+ * Parsing and evaluating each {@link Shape} of expression. Run with -prof gc for the allocation rate, which is 0 for
+ * the evaluation of compiled expressions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpressionBenchmark {
+
+    @Param
+    private Shape shape;
+
+    private String expression;
+    private String[] variables;
+    private double[] values;
+    private String constantExpression;
+    private CompiledExpression compiled;
+    private CompiledExpression jit;
+
+    @Setup
+    public void setUp() {
+        expression = shape.expression();
+        variables = shape.variables();
+        values = shape.variableValues();
+        constantExpression = shape.constantExpression();
+        compiled = Calculator.compile(expression, variables);
+        jit = compiled.jit();
+        if (Math.abs(compiled.eval(values) - Calculator.compile(constantExpression).eval()) > 1e-9 * Math.abs(compiled.eval(values))) {
+            throw new IllegalStateException("The constant form of " + shape + " evaluates differently");
+        }
+    }
+
+    /**
+     * Calculator.eval(String) of an expression in its cache: preprocessing the text and looking it up
+     */
+    @Benchmark
+    public double evalCached() {
+        return Calculator.eval(constantExpression);
+    }
+
+    /**
+     * What Calculator.eval(String) costs on a cache miss: parsing, optimizing and evaluating
+     */
+    @Benchmark
+    public double parseAndEval() {
+        return Calculator.compile(constantExpression).eval();
+    }
+
+    @Benchmark
+    public CompiledExpression compile() {
+        return Calculator.compile(expression, variables);
+    }
+
+    @Benchmark
+    public double evalCompiled() {
+        return compiled.eval(values);
+    }
+
+    @Benchmark
+    public double evalJit() {
+        return jit.eval(values);
+    }
+}
@@ -0,0 +1,86 @@
+package com.keon.projects.calculator.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.ExpressionPack;
+
+/**
+ * Startup with an {@link ExpressionPack}: loading it, and getting every expression from it, against compiling the
+ * expressions from their text
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PackBenchmark {
+
+    @Param({ "20000", "200000" })
+    private int expressions;
+
+    private Map<String, String> sources;
+    private Path path;
+
+    @Setup
+    public void setUp() throws IOException {
+        sources = new LinkedHashMap<>();
+        final Map<String, CompiledExpression> compiled = new LinkedHashMap<>();
+        for (int i = 0; i < expressions; ++i) {
+            final String exp = "x*" + i + " + sin(y - " + i % 97 + ")/(1 + z^2) + max(x, y, " + i % 13 + ")";
+            sources.put("f" + i, exp);
+            compiled.put("f" + i, Calculator.compile(exp, "x", "y", "z"));
+        }
+        path = Files.createTempFile("expressions", ".jcxp");
+        ExpressionPack.write(path, compiled);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(path);
+    }
+
+    @Benchmark
+    public ExpressionPack load() throws IOException {
+        return ExpressionPack.load(path);
+    }
+
+    @Benchmark
+    public double loadAll() throws IOException {
+        final ExpressionPack pack = ExpressionPack.load(path);
+        double sum = 0;
+        for (final String name : pack.names()) {
+            sum += pack.get(name).eval(1, 2, 3);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double compileAll() {
+        double sum = 0;
+        for (final String exp : sources.values()) {
+            sum += Calculator.compile(exp, "x", "y", "z").eval(1, 2, 3);
+        }
+        return sum;
+    }
+}
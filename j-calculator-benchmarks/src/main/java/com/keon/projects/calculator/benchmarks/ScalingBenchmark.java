@@ -0,0 +1,85 @@
+package com.keon.projects.calculator.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.Parallelism;
+import com.keon.projects.calculator.logic.VariableCalculator;
+
+/**
+ * How batch evaluation and the levels of a {@link VariableCalculator} scale with the threads of their pool. Run with
+ * -p threads=1,2,4,...,N up to the core count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalingBenchmark {
+
+    private static final int ROWS = 1 << 21;
+    private static final int DEFINITIONS = 20000;
+
+    @Param({ "1", "2", "4", "8" })
+    private int threads;
+
+    private ForkJoinPool pool;
+    private CompiledExpression expression;
+    private double[][] columns;
+    private double[] out;
+    private VariableCalculator calc;
+    private double x;
+
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(threads);
+        expression = Calculator.compile("sin(x)*y + sqrt(x^2 + y^2) + x^2/(1 + y^2)", "x", "y");
+        columns = new double[2][ROWS];
+        for (int i = 0; i < ROWS; ++i) {
+            columns[0][i] = i * 1e-6;
+            columns[1][i] = 1 - i * 1e-6;
+        }
+        out = new double[ROWS];
+        calc = new VariableCalculator(null, new Parallelism(pool).withThreshold(0), VariableCalculatorBenchmark.definitions(DEFINITIONS));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Evaluates an expression over 2M rows
+     */
+    @Benchmark
+    public double[] batch() {
+        expression.evalBatch(columns, out, pool);
+        return out;
+    }
+
+    /**
+     * Recomputes 20000 definitions, in two levels of 10000
+     */
+    @Benchmark
+    public double levels() {
+        x = x > 1 ? 0 : x + 1e-3;
+        calc.set("x", x);
+        return calc.get("b0");
+    }
+}
@@ -0,0 +1,140 @@
+package com.keon.projects.calculator.benchmarks;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The shapes of expressions benchmarked, each over variables so that the optimizer cannot fold them away
+ */
+public enum Shape {
+
+    /**
+     * x*2 + 1
+     */
+    SHORT {
+        @Override
+        String expression() {
+            return "x*2 + 1";
+        }
+
+        @Override
+        String[] variables() {
+            return new String[] { "x" };
+        }
+    },
+    /**
+     * x*1 + x*2 - x*3 + ... over 1000 terms
+     */
+    LONG_FLAT {
+        @Override
+        String expression() {
+            final StringBuilder exp = new StringBuilder("x*1");
+            for (int i = 2; i <= 1000; ++i) {
+                exp.append(i % 2 == 0 ? " + x*" : " - x*").append(i);
+            }
+            return exp.toString();
+        }
+
+        @Override
+        String[] variables() {
+            return new String[] { "x" };
+        }
+    },
+    /**
+     * The continued fraction 1/(1 + x/(2 + x/(3 + ...))), 500 levels deep
+     */
+    DEEPLY_NESTED {
+        @Override
+        String expression() {
+            final int depth = 500;
+            final StringBuilder exp = new StringBuilder("1/(1");
+            for (int i = 2; i <= depth; ++i) {
+                exp.append(" + x/(").append(i);
+            }
+            for (int i = 0; i < depth; ++i) {
+                exp.append(')');
+            }
+            return exp.toString();
+        }
+
+        @Override
+        String[] variables() {
+            return new String[] { "x" };
+        }
+    },
+    /**
+     * 50 terms of the form sin(x*i) + sqrt(y^2 + i) + max(x, y, i) + ln(1 + x^2)
+     */
+    FUNCTION_HEAVY {
+        @Override
+        String expression() {
+            final StringBuilder exp = new StringBuilder("0");
+            for (int i = 1; i <= 50; ++i) {
+                exp.append(" + sin(x*").append(i).append(") + sqrt(y^2 + ").append(i).append(") + max(x, y, ").append(i)
+                        .append(") + ln(1 + x^2)");
+            }
+            return exp.toString();
+        }
+
+        @Override
+        String[] variables() {
+            return new String[] { "x", "y" };
+        }
+    },
+    /**
+     * v0*v1 + v1*v2 + ... over 256 variables
+     */
+    VARIABLE_HEAVY {
+        @Override
+        String expression() {
+            final StringBuilder exp = new StringBuilder("v0*v1");
+            for (int i = 1; i < 255; ++i) {
+                exp.append(" + v").append(i).append("*v").append(i + 1);
+            }
+            return exp.toString();
+        }
+
+        @Override
+        String[] variables() {
+            final String[] vars = new String[256];
+            for (int i = 0; i < vars.length; ++i) {
+                vars[i] = "v" + i;
+            }
+            return vars;
+        }
+    };
+
+    abstract String expression();
+
+    abstract String[] variables();
+
+    /**
+     * @return a value for each variable, between 0.5 and 1.5
+     */
+    double[] variableValues() {
+        final double[] values = new double[variables().length];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = 0.5 + (i % 7) / 7.0;
+        }
+        return values;
+    }
+
+    /**
+     * @return the expression with the values in place of the variables, as passed to Calculator.eval(String)
+     */
+    String constantExpression() {
+        final String[] vars = variables();
+        final double[] values = variableValues();
+        final Matcher matcher = Pattern.compile("\\b(" + String.join("|", vars) + ")\\b").matcher(expression());
+        final StringBuffer exp = new StringBuffer();
+        while (matcher.find()) {
+            int slot = 0;
+            while (!vars[slot].equals(matcher.group(1))) {
+                ++slot;
+            }
+            matcher.appendReplacement(exp, "(" + values[slot] + ")");
+        }
+        matcher.appendTail(exp);
+        return exp.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package com.keon.projects.calculator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+
+/**
+ * The sum and integrate functions. They split their ranges across the common pool, whose parallelism is set with
+ * -jvmArgsAppend -Djava.util.concurrent.ForkJoinPool.common.parallelism=N.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SumBenchmark {
+
+    @Param({ "1000000", "100000000" })
+    private double terms;
+
+    private CompiledExpression sum;
+    private CompiledExpression integral;
+
+    @Setup
+    public void setUp() {
+        // over variables, which the optimizer cannot fold
+        sum = Calculator.compile("sum(k, 1, n, x/k^2)", "n", "x");
+        integral = Calculator.compile("integrate(sin(t*x)^2, t, 0, n/1000)", "n", "x");
+    }
+
+    @Benchmark
+    public double sum() {
+        return sum.eval(terms, 1);
+    }
+
+    @Benchmark
+    public double integrate() {
+        return integral.eval(terms, 3);
+    }
+}
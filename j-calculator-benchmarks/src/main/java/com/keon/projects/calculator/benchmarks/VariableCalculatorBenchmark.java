@@ -0,0 +1,80 @@
+package com.keon.projects.calculator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.VariableCalculator;
+
+/**
+ * Building a {@link VariableCalculator}, and recomputing its definitions when a variable is set. Half the definitions
+ * depend on x, and the other half on two of those.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VariableCalculatorBenchmark {
+
+    @Param({ "100", "10000" })
+    private int definitions;
+
+    private String[] vars;
+    private VariableCalculator calc;
+    private CompiledExpression expression;
+    private double x;
+
+    @Setup
+    public void setUp() {
+        vars = definitions(definitions);
+        calc = new VariableCalculator(vars);
+        expression = calc.compile("a0*x + b1");
+    }
+
+    /**
+     * @return x = 1, a_i = sin(x*i) + i and b_i = a_i*a_{i+1} - x, for i below half the count
+     */
+    static String[] definitions(final int count) {
+        final int half = count / 2;
+        final String[] vars = new String[2 * half + 1];
+        vars[0] = "x = 1";
+        for (int i = 0; i < half; ++i) {
+            vars[1 + i] = "a" + i + " = sin(x*" + i + ") + " + i;
+            vars[1 + half + i] = "b" + i + " = a" + i + "*a" + (i + 1) % half + " - x";
+        }
+        return vars;
+    }
+
+    @Benchmark
+    public VariableCalculator construct() {
+        return new VariableCalculator(vars);
+    }
+
+    /**
+     * Sets x, which every other definition depends on
+     */
+    @Benchmark
+    public double set() {
+        x = x > 1 ? 0 : x + 1e-3;
+        calc.set("x", x);
+        return calc.get("b0");
+    }
+
+    @Benchmark
+    public double eval() {
+        return calc.eval(expression);
+    }
+}
@@ -0,0 +1,41 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates a range of rows of a batch by splitting it in halves until the ranges are at most rowsPerTask long.
+ * Each task writes a disjoint range of the output, and ranges are split on multiples of {@link Program#CHUNK} rows so
+ * that tasks do not share cache lines of the output array except at their ends.
+ */
+class BatchTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final CompiledExpression expression;
+    private final double[][] columns;
+    private final double[] out;
+    private final int from;
+    private final int to;
+    private final int rowsPerTask;
+
+    BatchTask(final CompiledExpression expression, final double[][] columns, final double[] out, final int from, final int to,
+            final int rowsPerTask) {
+        this.expression = expression;
+        this.columns = columns;
+        this.out = out;
+        this.from = from;
+        this.to = to;
+        this.rowsPerTask = rowsPerTask;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= rowsPerTask) {
+            expression.eval(columns, from, to, out);
+            return;
+        }
+        final int mid = from + Math.max(Program.CHUNK, (to - from) / 2 / Program.CHUNK * Program.CHUNK);
+        invokeAll(new BatchTask(expression, columns, out, from, mid, rowsPerTask),
+                new BatchTask(expression, columns, out, mid, to, rowsPerTask));
+    }
+}
@@ -1,64 +1,128 @@
 package com.keon.projects.calculator.logic;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.Map.Entry;
+
 public class Calculator {
 
-    static final String[] OPS = Operator.getOps();
-    static final String[] FNS = Function.getFunctions();
+    /**
+     * The size of the caches of compiled expressions, see {@link #getCache()}
+     */
+    static final int CACHE_SIZE = Integer.getInteger("com.keon.projects.calculator.cacheSize", 1024);
 
-    private final Object[] args;
+    private static final ExpressionCache CACHE = new ExpressionCache(CACHE_SIZE);
 
-    private Calculator(final Object[] objs) {
-        this.args = objs;
+    private Calculator() {
     }
 
+    /**
+     * Evaluates the expression. The compiled form of recently evaluated expressions is cached, see {@link #getCache()}.
+     */
     public static double eval(final String exp) {
-        return Evaluator.eval(preprocess(exp)).val;
+        return CACHE.get(preprocess(exp), normalized -> compileNormalized(normalized, SymbolTable.EMPTY)).eval();
     }
 
-    static double calculate(Object[] objs) {
-        if (objs.length == 0)
-            return 0;
-        double x0 = (double) objs[0];
-        if (objs.length == 1)
-            return x0;
-        return new Calculator(objs).calculate0(x0, 2, objs.length);
+    /**
+     * @return the cache of expressions used by {@link #eval(String)}, whose size is bounded by the
+     *         com.keon.projects.calculator.cacheSize system property (1024 by default)
+     */
+    public static ExpressionCache getCache() {
+        return CACHE;
     }
 
-    private static String preprocess(String exp) {
-        return Constants.evalConstants(exp.replace(" ", ""));
+    /**
+     * Parses and optimizes the expression once into a {@link CompiledExpression} that can be evaluated repeatedly
+     * without re-parsing.
+     *
+     * @param exp  the expression
+     * @param vars the names of the variables the expression refers to, in the order their values will be passed to
+     *             {@link CompiledExpression#eval(double...)}. A vector is declared as v[n] and a matrix as m[rows][cols],
+     *             and takes that many values, in row-major order, e.g. "dot(v, w)" over "v[3]", "w[3]".
+     * @return the compiled expression
+     */
+    public static CompiledExpression compile(final String exp, final String... vars) {
+        return compile(exp, new SymbolTable(vars.clone()));
+    }
+
+    static CompiledExpression compile(final String exp, final SymbolTable vars) {
+        return compileNormalized(preprocess(exp), vars, Function.table());
+    }
+
+    static CompiledExpression compileNormalized(final String normalized, final SymbolTable vars) {
+        return compileNormalized(normalized, vars, Function.table());
+    }
+
+    /**
+     * @param normalized an expression as returned by {@link #preprocess(String)}
+     */
+    static CompiledExpression compileNormalized(final String normalized, final SymbolTable vars, final FunctionTable functions) {
+        return new CompiledExpression(normalized, vars.names(), Optimizer.optimize(new Parser(vars, functions).parse(normalized)));
     }
 
-    // k0 should be on a number
-    private double calculate0(double v, final int k0, final int kf) {
-        for (int k = k0; k < kf; ) {
-            final Operator op1 = new Operator((String) args[k - 1]);
-            double x = (double) args[k];
-            if (k + 1 < kf) {
-                final Operator op2 = new Operator((String) args[k + 1]);
-                if (op2.isSuperiorTo(op1)) {
-                    int kff = getNextCompatibleOccurrenceOf(k + 1, op1); //e.g for + it will be + or -
-                    double y = calculate0(x, k + 2, kff);
-                    v = op1.apply(v, y);
-                    k = kff + 1;
-                } else {
-                    v = op1.apply(v, x);
-                    k += 2;
-                }
-            } else {
-                v = op1.apply(v, x);
-                k += 2;
-            }
+    /**
+     * Registers a user function, to be called by its name in expressions compiled from now on
+     *
+     * @throws IllegalArgumentException if a function of the same name exists, or the name is not an identifier
+     */
+    public static void register(final FunctionDefinition f) {
+        Function.register(f);
+    }
+
+    /**
+     * Evaluates the expression for every row of a set of named columns, e.g. a derived metric over a time series.
+     *
+     * @param exp     the expression
+     * @param columns the values of each variable of the expression, with a value per row
+     * @param out     receives the value of the expression for each row; its length is the number of rows
+     */
+    public static void evalBatch(final String exp, final Map<String, double[]> columns, final double[] out) {
+        final String[] vars = new String[columns.size()];
+        final double[][] values = new double[columns.size()][];
+        int k = 0;
+        for (final Entry<String, double[]> column : columns.entrySet()) {
+            vars[k] = column.getKey();
+            values[k] = column.getValue();
+            k++;
         }
-        return v;
+        compile(exp, vars).evalBatch(values, out);
     }
 
-    private int getNextCompatibleOccurrenceOf(final int k0, final Operator op) {
-        for (int k = k0; k < args.length; k += 2) {
-            if (op.isInSameClassAs(new Operator((String) args[k]))) {
-                return k;
-            }
+    /**
+     * Evaluates the expression for every row of a set of named column files, which may be larger than the heap, see
+     * {@link CompiledExpression#evalBatch(ColumnFile[], ColumnFile)}.
+     *
+     * @param exp     the expression
+     * @param columns the values of each variable of the expression
+     * @param out     receives the value of the expression for each row
+     */
+    public static void evalBatch(final String exp, final Map<String, ColumnFile> columns, final ColumnFile out) throws IOException {
+        final String[] vars = new String[columns.size()];
+        final ColumnFile[] files = new ColumnFile[columns.size()];
+        int k = 0;
+        for (final Entry<String, ColumnFile> column : columns.entrySet()) {
+            vars[k] = column.getKey();
+            files[k] = column.getValue();
+            k++;
         }
-        return args.length;
+        compile(exp, vars).evalBatch(files, out);
+    }
+
+    /**
+     * Calculates a flat list of alternating numbers and operators, e.g. [1, "+", 2, "*", 3]
+     */
+    static double calculate(Object[] objs) {
+        if (objs.length == 0)
+            return 0;
+        final StringBuilder exp = new StringBuilder();
+        for (final Object o : objs) {
+            exp.append(o);
+        }
+        return eval(exp.toString());
+    }
+
+    static String preprocess(String exp) {
+        return Constants.evalConstants(exp.replace(" ", ""));
     }
 
 }
@@ -0,0 +1,97 @@
+package com.keon.projects.calculator.logic;
+
+/**
+ * A calculator whose functions are fixed when it is created, so that functions registered later do not change what
+ * its expressions mean. It is immutable and may be shared by any number of threads.
+ */
+public final class CalculatorEngine {
+
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private final FunctionTable functions;
+    private final int cacheSize;
+    private final ExpressionCache cache;
+    private final Profiler profiler;
+
+    /**
+     * An engine with the functions registered so far, and a cache of 1024 expressions
+     */
+    public CalculatorEngine() {
+        this(Function.table(), DEFAULT_CACHE_SIZE, null);
+    }
+
+    private CalculatorEngine(final FunctionTable functions, final int cacheSize, final Profiler profiler) {
+        this.functions = functions;
+        this.cacheSize = cacheSize;
+        this.cache = new ExpressionCache(cacheSize);
+        this.profiler = profiler;
+    }
+
+    /**
+     * @return an engine with the functions of this one and f, and a cache of its own
+     * @throws IllegalArgumentException if this engine has a function of the same name, or the name is not an
+     *                                  identifier
+     */
+    public CalculatorEngine withFunction(final FunctionDefinition f) {
+        return new CalculatorEngine(functions.with(f.getName(), Ifunction.user(f)), cacheSize, profiler);
+    }
+
+    /**
+     * @param maxSize the count of expressions evaluated by {@link #eval(String)} whose compiled form is kept, 0 for none
+     * @return an engine with the functions of this one and a cache of that size
+     */
+    public CalculatorEngine withCacheSize(final int maxSize) {
+        return new CalculatorEngine(functions, maxSize, profiler);
+    }
+
+    /**
+     * @param profiler records the parsing of the expressions the engine compiles and their evaluations, see
+     *                 {@link CompiledExpression#profile(Profiler)}; null for none
+     * @return an engine with the functions of this one and a cache of its own
+     */
+    public CalculatorEngine withProfiler(final Profiler profiler) {
+        return new CalculatorEngine(functions, cacheSize, profiler);
+    }
+
+    /**
+     * Evaluates the expression, see {@link Calculator#eval(String)}
+     */
+    public double eval(final String exp) {
+        return cache.get(Calculator.preprocess(exp), normalized -> compileNormalized(normalized, SymbolTable.EMPTY)).eval();
+    }
+
+    /**
+     * Compiles the expression against the functions of this engine, see {@link Calculator#compile(String, String...)}
+     */
+    public CompiledExpression compile(final String exp, final String... vars) {
+        return compileNormalized(Calculator.preprocess(exp), new SymbolTable(vars.clone()));
+    }
+
+    private CompiledExpression compileNormalized(final String normalized, final SymbolTable vars) {
+        if (profiler == null) {
+            return Calculator.compileNormalized(normalized, vars, functions);
+        }
+        final long start = System.nanoTime();
+        final CompiledExpression e = Calculator.compileNormalized(normalized, vars, functions);
+        profiler.parsed(System.nanoTime() - start);
+        return e.profile(profiler);
+    }
+
+    /**
+     * @return the cache of expressions used by {@link #eval(String)}
+     */
+    public ExpressionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the names of the functions of this engine
+     */
+    public String[] getFunctions() {
+        return functions.names();
+    }
+
+    FunctionTable functions() {
+        return functions;
+    }
+}
@@ -0,0 +1,162 @@
+package com.keon.projects.calculator.logic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A column of little-endian doubles in a binary file, raw or after a header of the magic JCOL, the int version and the
+ * long count of rows. It is memory-mapped a segment at a time, see
+ * {@link CompiledExpression#evalBatch(ColumnFile[], ColumnFile)}.
+ */
+public final class ColumnFile {
+
+    static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 'J' | 'C' << 8 | 'O' << 16 | 'L' << 24;
+    private static final int VERSION = 1;
+
+    private final Path path;
+    private final long offset;
+    private final long rows;
+
+    private ColumnFile(final Path path, final long offset, final long rows) {
+        this.path = path;
+        this.offset = offset;
+        this.rows = rows;
+    }
+
+    /**
+     * Opens a column with a header, or a raw column if the file does not start with one
+     *
+     * @throws IOException if the header does not match the size of the file, or a raw file is not a whole count of
+     *                     doubles
+     */
+    public static ColumnFile open(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size >= HEADER_SIZE) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                while (header.hasRemaining()) {
+                    if (channel.read(header, header.position()) < 0) {
+                        break;
+                    }
+                }
+                header.flip();
+                if (header.getInt() == MAGIC) {
+                    final int version = header.getInt();
+                    if (version != VERSION) {
+                        throw new IOException("Unsupported version " + version + " of column file " + path);
+                    }
+                    final long rows = header.getLong();
+                    if (rows < 0 || (size - HEADER_SIZE) / Double.BYTES < rows) {
+                        throw new IOException("Column file " + path + " of " + size + " bytes is too short for " + rows + " rows");
+                    }
+                    return new ColumnFile(path, HEADER_SIZE, rows);
+                }
+            }
+            return raw(path, size);
+        }
+    }
+
+    /**
+     * Opens a column of raw doubles, without checking for a header
+     */
+    public static ColumnFile openRaw(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return raw(path, channel.size());
+        }
+    }
+
+    private static ColumnFile raw(final Path path, final long size) throws IOException {
+        if (size % Double.BYTES != 0) {
+            throw new IOException("Raw column file " + path + " of " + size + " bytes is not a whole count of doubles");
+        }
+        return new ColumnFile(path, 0, size / Double.BYTES);
+    }
+
+    /**
+     * Creates, or truncates, a column with a header and the given count of rows, all 0
+     */
+    public static ColumnFile create(final Path path, final long rows) throws IOException {
+        if (rows < 0) {
+            throw new IllegalArgumentException("Negative count of rows: " + rows);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(rows).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            // extends the file without writing the zeros
+            if (rows > 0) {
+                channel.write(ByteBuffer.allocate(1), HEADER_SIZE + rows * Double.BYTES - 1);
+            }
+        }
+        return new ColumnFile(path, HEADER_SIZE, rows);
+    }
+
+    /**
+     * Creates a column with a header holding the values
+     */
+    public static ColumnFile write(final Path path, final double[] values) throws IOException {
+        final ColumnFile column = create(path, values.length);
+        try (FileChannel channel = column.channel(true)) {
+            final MappedByteBuffer buffer = column.map(channel, 0, values.length, true);
+            buffer.asDoubleBuffer().put(values);
+            buffer.force();
+        }
+        return column;
+    }
+
+    /**
+     * @return count values from row from on
+     */
+    public double[] read(final long from, final int count) throws IOException {
+        checkRange(from, count);
+        final double[] values = new double[count];
+        try (FileChannel channel = channel(false)) {
+            map(channel, from, count, false).asDoubleBuffer().get(values);
+        }
+        return values;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    FileChannel channel(final boolean write) throws IOException {
+        return write ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    /**
+     * Maps rows [from, from+count), to be viewed with {@link MappedByteBuffer#asDoubleBuffer()}
+     */
+    MappedByteBuffer map(final FileChannel channel, final long from, final int count, final boolean write) throws IOException {
+        final MappedByteBuffer buffer = channel.map(write ? MapMode.READ_WRITE : MapMode.READ_ONLY, offset + from * Double.BYTES,
+                (long) count * Double.BYTES);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private void checkRange(final long from, final int count) {
+        if (from < 0 || count < 0 || from + count > rows) {
+            throw new IndexOutOfBoundsException("Rows [" + from + ", " + (from + count) + ") of " + rows + " in " + path);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path + " (" + rows + " rows)";
+    }
+}
@@ -0,0 +1,270 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces subtrees evaluated more than once across a set of expressions, e.g. the definitions of a
+ * {@link VariableCalculator}, by new variables in the slots after the existing ones. Only scalar subtrees that are
+ * always evaluated and call pure functions are shared.
+ */
+class CommonSubexpressions {
+
+    /**
+     * The estimated cost of evaluating a variable's definition, relative to an arithmetic operator
+     */
+    private static final int DEFINITION_COST = 8;
+    /**
+     * The estimated cost of a function call or of a power, relative to an arithmetic operator
+     */
+    private static final int CALL_COST = 8;
+
+    private final Map<Shape, Integer> ids = new HashMap<>();
+    private final List<Entry> entries = new ArrayList<>();
+
+    private CommonSubexpressions() {
+    }
+
+    /**
+     * @param roots the expressions
+     * @param slots the count of variables the expressions are over
+     * @return the expressions with their shared subtrees replaced by variables, followed by the definitions of those
+     *         variables, whose slots are slots, slots+1, ..., in that order. The definition of a new variable only
+     *         refers to the existing variables and the new variables before it.
+     */
+    static Node[] eliminate(final Node[] roots, final int slots) {
+        return new CommonSubexpressions().share(roots, slots);
+    }
+
+    private Node[] share(final Node[] roots, final int slots) {
+        final int[] rootIds = new int[roots.length];
+        for (int i = 0; i < roots.length; ++i) {
+            rootIds[i] = hashCons(roots[i]);
+            entries.get(rootIds[i]).uses++;
+        }
+        // a subtree's id is greater than its children's, so its uses are known before its children's are counted
+        for (int id = entries.size() - 1; id >= 0; --id) {
+            final Entry e = entries.get(id);
+            if (e.uses == 0) {
+                continue;
+            }
+            e.shared = e.uses > 1 && e.pure && e.operands.length > 0 && e.node.shape().length == 0
+                    && (e.uses - 1) * e.cost > DEFINITION_COST;
+            for (final int operand : e.operands) {
+                entries.get(operand).uses += e.shared ? 1 : e.uses;
+            }
+        }
+
+        final List<Node> definitions = new ArrayList<>();
+        for (final Entry e : entries) {
+            if (e.uses == 0) {
+                continue;
+            }
+            final Node[] operands = e.node.operands();
+            final Node[] rewritten = new Node[operands.length];
+            boolean changed = false;
+            for (int k = 0; k < operands.length; ++k) {
+                rewritten[k] = entries.get(e.operands[k]).reference();
+                changed |= rewritten[k] != operands[k];
+            }
+            e.rewritten = changed ? withOperands(e.node, rewritten) : e.node;
+            if (e.shared) {
+                final int slot = slots + definitions.size();
+                e.variable = new Node.Variable("$" + definitions.size(), slot);
+                definitions.add(e.rewritten);
+            }
+        }
+
+        final Node[] res = Arrays.copyOf(roots, roots.length + definitions.size());
+        for (int i = 0; i < roots.length; ++i) {
+            res[i] = entries.get(rootIds[i]).reference();
+        }
+        for (int k = 0; k < definitions.size(); ++k) {
+            res[roots.length + k] = definitions.get(k);
+        }
+        return res;
+    }
+
+    /**
+     * @return the id of the tree, adding ids for its subtrees as needed
+     */
+    private int hashCons(final Node root) {
+        final Map<Node, Integer> nodeIds = new IdentityHashMap<>();
+        int id = -1;
+        for (final Node n : Program.postorder(root)) {
+            final Node[] children = n.children();
+            final int[] childIds = new int[children.length];
+            for (int k = 0; k < children.length; ++k) {
+                childIds[k] = nodeIds.get(children[k]);
+            }
+            final Shape shape = new Shape(n, childIds);
+            final Integer existing = ids.get(shape);
+            if (existing != null) {
+                id = existing;
+            } else {
+                id = entries.size();
+                ids.put(shape, id);
+                entries.add(new Entry(n, childIds));
+            }
+            nodeIds.put(n, id);
+        }
+        return id;
+    }
+
+    private Entry entry(final int id) {
+        return entries.get(id);
+    }
+
+    /**
+     * @return a copy of the node with other operands
+     */
+    private static Node withOperands(final Node n, final Node[] operands) {
+        if (n instanceof Node.Binary) {
+            return new Node.Binary(((Node.Binary) n).op, operands[0], operands[1]);
+        }
+        if (n instanceof Node.Call) {
+            return new Node.Call(((Node.Call) n).name, ((Node.Call) n).f, operands);
+        }
+        if (n instanceof Node.Binding) {
+            final Node.Binding binding = (Node.Binding) n;
+            return new Node.Binding(binding.name, binding.f, binding.variable, binding.slot, binding.body, operands);
+        }
+        if (n instanceof Node.Elementwise) {
+            return new Node.Elementwise(((Node.Elementwise) n).op, operands[0], operands[1]);
+        }
+        if (n instanceof Node.ArrayCall) {
+            return new Node.ArrayCall(((Node.ArrayCall) n).name, ((Node.ArrayCall) n).f, operands);
+        }
+        if (n instanceof Node.ArrayLiteral) {
+            return new Node.ArrayLiteral(operands);
+        }
+        throw new UnsupportedOperationException("Unrecognized node type: " + n.getClass());
+    }
+
+    /**
+     * A distinct subtree
+     */
+    private class Entry {
+
+        final Node node;
+        /**
+         * The ids of the operands of the subtree, see {@link Node#operands()}
+         */
+        final int[] operands;
+        final boolean pure;
+        final int cost;
+        int uses;
+        boolean shared;
+        Node rewritten;
+        Node.Variable variable;
+
+        Entry(final Node node, final int[] children) {
+            this.node = node;
+            this.operands = Arrays.copyOf(children, node.operands().length);
+            boolean pure = true;
+            int cost = 0;
+            for (final int child : children) {
+                pure &= entry(child).pure;
+                cost += entry(child).cost;
+            }
+            if (node instanceof Node.Binary) {
+                final Operator op = ((Node.Binary) node).op;
+                cost += op == Operator.POWER || op == Operator.ROOT || op == Operator.MODULO ? CALL_COST : 1;
+            } else if (node instanceof Node.Call) {
+                pure &= ((Node.Call) node).f.isPure();
+                cost += CALL_COST;
+            } else if (node instanceof Node.LazyCall) {
+                pure &= ((Node.LazyCall) node).f.isPure();
+                cost += CALL_COST;
+            } else if (node instanceof Node.Binding) {
+                pure &= ((Node.Binding) node).f.isPure();
+                cost += CALL_COST;
+            } else if (node instanceof Node.ArrayCall) {
+                pure &= ((Node.ArrayCall) node).f.isPure();
+                cost += CALL_COST + node.size();
+            } else if (node instanceof Node.Elementwise || node instanceof Node.ArrayVariable) {
+                cost += node.size();
+            }
+            this.pure = pure;
+            this.cost = cost;
+        }
+
+        /**
+         * @return the node that computes the subtree where it is used
+         */
+        Node reference() {
+            return shared ? variable : rewritten;
+        }
+    }
+
+    /**
+     * The structure of a node, given the ids of its children
+     */
+    private static class Shape {
+
+        private final Class<?> type;
+        private final long value;
+        private final String name;
+        private final int[] children;
+
+        Shape(final Node n, final int[] children) {
+            this.type = n.getClass();
+            this.children = children;
+            if (n instanceof Node.Constant) {
+                value = Double.doubleToLongBits(((Node.Constant) n).value);
+                name = null;
+            } else if (n instanceof Node.Variable) {
+                value = ((Node.Variable) n).slot;
+                name = null;
+            } else if (n instanceof Node.Binary) {
+                value = ((Node.Binary) n).op.ordinal();
+                name = null;
+            } else if (n instanceof Node.Call) {
+                value = 0;
+                name = ((Node.Call) n).name;
+            } else if (n instanceof Node.LazyCall) {
+                value = 0;
+                name = ((Node.LazyCall) n).name;
+            } else if (n instanceof Node.Binding) {
+                value = ((Node.Binding) n).slot;
+                name = ((Node.Binding) n).name;
+            } else if (n instanceof Node.ArrayVariable) {
+                value = ((Node.ArrayVariable) n).slot;
+                name = null;
+            } else if (n instanceof Node.ArrayLiteral) {
+                value = 0;
+                name = null;
+            } else if (n instanceof Node.Elementwise) {
+                value = ((Node.Elementwise) n).op.ordinal();
+                name = null;
+            } else if (n instanceof Node.ArrayCall) {
+                value = 0;
+                name = ((Node.ArrayCall) n).name;
+            } else {
+                throw new UnsupportedOperationException("Unrecognized node type: " + n.getClass());
+            }
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Shape)) {
+                return false;
+            }
+            final Shape s = (Shape) o;
+            return type == s.type && value == s.value && (name == null ? s.name == null : name.equals(s.name))
+                    && Arrays.equals(children, s.children);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = type.hashCode();
+            h = 31 * h + Long.hashCode(value);
+            h = 31 * h + (name == null ? 0 : name.hashCode());
+            return 31 * h + Arrays.hashCode(children);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.keon.projects.calculator.logic;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An immutable, parsed form of an expression produced by {@link Calculator#compile(String, String...)}. It can be
+ * evaluated any number of times, with different variable values, without re-parsing the expression.
+ */
+public final class CompiledExpression {
+
+    static final double[] NO_VARS = {};
+
+    /**
+     * 16 chunks of rows, which for a handful of columns is a working set that fits in the L2 cache
+     */
+    private static final int ROWS_PER_TASK = 16 * Program.CHUNK;
+
+    /**
+     * The rows of a column file copied to the heap and evaluated at a time, 512KB per column
+     */
+    static final int ROWS_PER_WINDOW = 64 * Program.CHUNK;
+
+    /**
+     * The rows of a column file mapped at a time, 128MB per column. Mappings are only released once garbage collected,
+     * so large segments keep their count low.
+     */
+    static final int ROWS_PER_SEGMENT = 256 * ROWS_PER_WINDOW;
+
+    private final String expression;
+    private final String[] vars;
+    private final Node root;
+    private final Program program;
+    private final Evaluable evaluable;
+    private final boolean scalar;
+
+    CompiledExpression(final String expression, final String[] vars, final Node root) {
+        this(expression, vars, root, Program.of(root), null);
+    }
+
+    private CompiledExpression(final String expression, final String[] vars, final Node root, final Program program,
+            final Evaluable evaluable) {
+        this.expression = expression;
+        this.vars = vars;
+        this.root = root;
+        this.program = program;
+        this.evaluable = evaluable == null ? program : evaluable;
+        this.scalar = root.shape().length == 0;
+    }
+
+    /**
+     * Generates bytecode for this expression, which is worth it for expressions evaluated a great many times. Large
+     * expressions, which the JVM would not compile any further, are left to the interpreter.
+     *
+     * @return an equivalent expression that evaluates through generated code
+     */
+    public CompiledExpression jit() {
+        if (evaluable != program) {
+            return this;
+        }
+        final Evaluable compiled = JitCompiler.compile(program);
+        return compiled == null ? this : new CompiledExpression(expression, vars, root, program, compiled);
+    }
+
+    /**
+     * @return an equivalent expression whose evaluations are recorded by the profiler. Its batches are evaluated a row
+     *         at a time, and it is not compiled any further by {@link #jit()}.
+     */
+    public CompiledExpression profile(final Profiler profiler) {
+        final Evaluable profiled = profiler.profile(program, expression);
+        return new CompiledExpression(expression, vars, root, program, values -> {
+            final long start = System.nanoTime();
+            final double value = profiled.eval(values);
+            profiler.evaluated(System.nanoTime() - start);
+            return value;
+        });
+    }
+
+    /**
+     * @return the names of the variables of this expression, in slot order
+     */
+    public String[] getVariables() {
+        return vars.clone();
+    }
+
+    /**
+     * @return the dimensions of the value of this expression: none for a scalar, {n} for a vector and {rows, cols}
+     *         for a matrix
+     */
+    public int[] getShape() {
+        return root.shape().clone();
+    }
+
+    public double eval() {
+        return eval(NO_VARS);
+    }
+
+    /**
+     * @param values the variable values, in the same order as {@link #getVariables()}. An array variable takes a
+     *               value for each of its slots, see {@link Calculator#compile(String, String...)}.
+     * @return the value of the expression, which is a scalar
+     */
+    public double eval(final double... values) {
+        checkValues(values);
+        checkScalar();
+        return evaluable.eval(values);
+    }
+
+    /**
+     * Evaluates an expression whose value may be a vector or a matrix, e.g. matmul(m, v)
+     *
+     * @param values the variable values, see {@link #eval(double...)}
+     * @return the values of the value, in row-major order
+     */
+    public double[] evalArray(final double... values) {
+        checkValues(values);
+        final double[] out = new double[root.size()];
+        program.eval(values, out);
+        return out;
+    }
+
+    private void checkValues(final double[] values) {
+        if (values.length != vars.length) {
+            throw new ArgumentCountException("Expected values for " + Arrays.toString(vars) + ". Got " + values.length + " values");
+        }
+    }
+
+    private void checkScalar() {
+        if (!scalar) {
+            throw new ShapeMismatchException("The value of " + expression + " is an array of shape " + Arrays.toString(root.shape()));
+        }
+    }
+
+    /**
+     * Evaluates the expression against an environment that may hold more values than its variables, after them
+     */
+    double evalIn(final double[] env) {
+        checkScalar();
+        return evaluable.eval(env);
+    }
+
+    /**
+     * Prepares the evaluation of this expression together with its partial derivatives, see {@link Gradient}.
+     *
+     * @param wrt the variables to differentiate with respect to; all of them if none are given
+     * @throws UnsupportedOperationException if the expression calls a function that cannot be differentiated
+     */
+    public Gradient gradient(final String... wrt) {
+        return new Gradient(vars, root, program, wrt.length == 0 ? vars.clone() : wrt.clone());
+    }
+
+    /**
+     * Evaluates the expression for every row of a set of columns. Interpreted expressions are evaluated a node at a
+     * time over blocks of rows, rather than a row at a time.
+     *
+     * @param columns the variable values, in the same order as {@link #getVariables()}, each holding a value per row
+     * @param out     receives the value of the expression for each row; its length is the number of rows
+     */
+    public void evalBatch(final double[][] columns, final double[] out) {
+        checkColumns(columns, out.length);
+        eval(columns, 0, out.length, out);
+    }
+
+    /**
+     * Evaluates the expression for every row of a set of columns, splitting the rows across the pool. See
+     * {@link #evalBatch(double[][], double[])}.
+     *
+     * @param pool the pool to run on, whose parallelism determines the number of threads used
+     */
+    public void evalBatch(final double[][] columns, final double[] out, final ForkJoinPool pool) {
+        evalBatch(columns, out, pool, ROWS_PER_TASK);
+    }
+
+    /**
+     * @param rowsPerTask the number of rows below which a range is no longer split. Ranges are evaluated
+     *                    {@value Program#CHUNK} rows at a time, so smaller values are rounded up to that.
+     * @see #evalBatch(double[][], double[], ForkJoinPool)
+     */
+    public void evalBatch(final double[][] columns, final double[] out, final ForkJoinPool pool, final int rowsPerTask) {
+        checkColumns(columns, out.length);
+        pool.invoke(new BatchTask(this, columns, out, 0, out.length, Math.max(Program.CHUNK, rowsPerTask)));
+    }
+
+    /**
+     * Evaluates the expression for every row of a set of column files, which may be larger than the heap, mapping
+     * them a segment of rows at a time
+     *
+     * @param columns the variable values, in the same order as {@link #getVariables()}
+     * @param out     receives the value of the expression for each row; its count of rows is the number of rows
+     *                evaluated, see {@link ColumnFile#create(java.nio.file.Path, long)}
+     */
+    public void evalBatch(final ColumnFile[] columns, final ColumnFile out) throws IOException {
+        evalBatch(columns, out, null);
+    }
+
+    /**
+     * Evaluates each window of rows of a set of column files in parallel, see
+     * {@link #evalBatch(ColumnFile[], ColumnFile)} and {@link #evalBatch(double[][], double[], ForkJoinPool)}
+     *
+     * @param pool the pool to run on, or null to evaluate on the calling thread
+     */
+    public void evalBatch(final ColumnFile[] columns, final ColumnFile out, final ForkJoinPool pool) throws IOException {
+        checkScalar();
+        if (columns.length != vars.length) {
+            throw new ArgumentCountException("Expected columns for " + Arrays.toString(vars) + ". Got " + columns.length + " columns");
+        }
+        final long rows = out.getRows();
+        for (int k = 0; k < columns.length; ++k) {
+            if (columns[k].getRows() < rows) {
+                throw new IllegalArgumentException("Column " + vars[k] + " has " + columns[k].getRows() + " rows. Expected " + rows);
+            }
+        }
+        final int window = (int) Math.min(ROWS_PER_WINDOW, rows);
+        final double[][] values = new double[columns.length][window];
+        final double[] res = new double[window];
+        final FileChannel[] channels = new FileChannel[columns.length];
+        final DoubleBuffer[] segments = new DoubleBuffer[columns.length];
+        try (FileChannel target = out.channel(true)) {
+            for (int k = 0; k < columns.length; ++k) {
+                channels[k] = columns[k].channel(false);
+            }
+            for (long segment = 0; segment < rows; segment += ROWS_PER_SEGMENT) {
+                final int segmentRows = (int) Math.min(ROWS_PER_SEGMENT, rows - segment);
+                for (int k = 0; k < columns.length; ++k) {
+                    segments[k] = columns[k].map(channels[k], segment, segmentRows, false).asDoubleBuffer();
+                }
+                final MappedByteBuffer mapped = out.map(target, segment, segmentRows, true);
+                final DoubleBuffer result = mapped.asDoubleBuffer();
+                for (int row = 0; row < segmentRows; row += window) {
+                    final int len = Math.min(window, segmentRows - row);
+                    for (int k = 0; k < columns.length; ++k) {
+                        segments[k].get(values[k], 0, len);
+                    }
+                    if (pool == null) {
+                        eval(values, 0, len, res);
+                    } else {
+                        pool.invoke(new BatchTask(this, values, res, 0, len, ROWS_PER_TASK));
+                    }
+                    result.put(res, 0, len);
+                }
+                mapped.force();
+            }
+        } finally {
+            for (final FileChannel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates rows [from, to)
+     */
+    void eval(final double[][] columns, final int from, final int to, final double[] out) {
+        if (evaluable == program) {
+            program.eval(columns, from, to, out);
+            return;
+        }
+        final double[] row = new double[columns.length];
+        for (int r = from; r < to; ++r) {
+            for (int k = 0; k < row.length; ++k) {
+                row[k] = columns[k][r];
+            }
+            out[r] = evaluable.eval(row);
+        }
+    }
+
+    private void checkColumns(final double[][] columns, final int rows) {
+        checkScalar();
+        if (columns.length != vars.length) {
+            throw new ArgumentCountException("Expected columns for " + Arrays.toString(vars) + ". Got " + columns.length + " columns");
+        }
+        for (int k = 0; k < columns.length; ++k) {
+            if (columns[k].length < rows) {
+                throw new IllegalArgumentException("Column " + vars[k] + " has " + columns[k].length + " rows. Expected " + rows);
+            }
+        }
+    }
+
+    /**
+     * @return the variable names by slot, shared with the symbol table the expression was compiled against
+     */
+    String[] variables() {
+        return vars;
+    }
+
+    /**
+     * @return the distinct slots of the variables the expression reads
+     */
+    int[] variableSlots() {
+        return program.variableSlots();
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
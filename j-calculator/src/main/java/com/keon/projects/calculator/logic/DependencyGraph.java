@@ -0,0 +1,307 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The dependencies between variables, by slot, grouped in components of variables that depend on each other and in
+ * levels of components that are independent of each other.
+ */
+class DependencyGraph {
+
+    private final String[] names;
+    private final int[][] dependencies;
+    private final int[][] dependents;
+    private int[][] components;
+    private int[] component;
+    /**
+     * The index of the first component of each level, followed by the count of components
+     */
+    private int[] levelStarts;
+
+    /**
+     * @param names        the names of the variables, by slot
+     * @param dependencies the slots each slot depends on, without duplicates
+     */
+    DependencyGraph(final String[] names, final int[][] dependencies) {
+        this.names = names;
+        this.dependencies = dependencies;
+        this.dependents = invert(dependencies);
+        findComponents();
+    }
+
+    int size() {
+        return dependencies.length;
+    }
+
+    int[] dependenciesOf(final int slot) {
+        return dependencies[slot];
+    }
+
+    int[] dependentsOf(final int slot) {
+        return dependents[slot];
+    }
+
+    /**
+     * @return the strongly connected components, i.e. the maximal sets of slots that all depend on each other,
+     *         ordered by level, so that every component comes after the components it depends on
+     */
+    int[][] components() {
+        return components;
+    }
+
+    /**
+     * @return the components of each level, lowest first
+     */
+    int[][][] levels() {
+        final int[][][] levels = new int[levelStarts.length - 1][][];
+        for (int l = 0; l < levels.length; ++l) {
+            levels[l] = Arrays.copyOfRange(components, levelStarts[l], levelStarts[l + 1]);
+        }
+        return levels;
+    }
+
+    /**
+     * @return the level of the component of the slot. Removing dependencies does not lower levels, which remain
+     *         valid.
+     */
+    int levelOf(final int slot) {
+        final int c = component[slot];
+        int lo = 0;
+        int hi = levelStarts.length - 2;
+        // the last level starting at or before c
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (levelStarts[mid] <= c) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return true if the slots of the component depend on each other, rather than being a single slot that does not
+     *         depend on itself
+     */
+    boolean isCyclic(final int[] component) {
+        if (component.length > 1) {
+            return true;
+        }
+        for (final int dependency : dependencies[component[0]]) {
+            if (dependency == component[0]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the slots ordered such that every slot comes after the slots it depends on
+     * @throws CyclicEquationsException if the dependencies have a cycle
+     */
+    int[] order() {
+        final int[] order = new int[size()];
+        final List<String> cyclic = new ArrayList<>();
+        int k = 0;
+        for (final int[] c : components) {
+            if (isCyclic(c)) {
+                for (final int slot : c) {
+                    cyclic.add(names[slot]);
+                }
+            } else {
+                order[k++] = c[0];
+            }
+        }
+        if (!cyclic.isEmpty()) {
+            throw new CyclicEquationsException("Cyclic Equations are not allowed - Cycle found between 1+ symbols in " + cyclic);
+        }
+        return order;
+    }
+
+    /**
+     * @return the component the slot is in, see {@link #components()}
+     */
+    int[] componentOf(final int slot) {
+        return components[component[slot]];
+    }
+
+    /**
+     * @return the slots that transitively depend on any of the given slots, ordered by component as in
+     *         {@link #components()}, so that the slots of a component, and the components of a level, are next to each
+     *         other
+     */
+    int[] transitiveDependentsOf(final int... slots) {
+        final BitSet seen = new BitSet(size());
+        final int[] pending = new int[size()];
+        int count = 0;
+        for (final int slot : slots) {
+            pending[count++] = slot;
+            seen.set(slot);
+        }
+        final long[] affected = new long[size()];
+        int affectedCount = 0;
+        while (count > 0) {
+            for (final int dependent : dependents[pending[--count]]) {
+                if (!seen.get(dependent)) {
+                    seen.set(dependent);
+                    pending[count++] = dependent;
+                    affected[affectedCount++] = (long) component[dependent] << 32 | dependent;
+                }
+            }
+        }
+        // sort by component, then slot
+        Arrays.sort(affected, 0, affectedCount);
+        final int[] res = new int[affectedCount];
+        for (int i = 0; i < affectedCount; ++i) {
+            res[i] = (int) affected[i];
+        }
+        return res;
+    }
+
+    /**
+     * Removes the dependencies of a slot, e.g. after its definition is replaced by a constant. The order of the
+     * components remains valid since no dependency is added, but a cycle through the slot is broken up.
+     */
+    void clearDependenciesOf(final int slot) {
+        final boolean cyclic = isCyclic(componentOf(slot));
+        for (final int dependency : dependencies[slot]) {
+            dependents[dependency] = remove(dependents[dependency], slot);
+        }
+        dependencies[slot] = new int[0];
+        if (cyclic) {
+            findComponents();
+        }
+    }
+
+    /**
+     * Tarjan's algorithm, with an explicit stack. A component is complete once all the slots it depends on have been
+     * visited, so components are found in dependency order, and are then sorted by level.
+     */
+    private void findComponents() {
+        final int n = size();
+        final int[] index = new int[n];
+        final int[] low = new int[n];
+        final int[] edge = new int[n];
+        final boolean[] onStack = new boolean[n];
+        final int[] stack = new int[n];
+        final int[] calls = new int[n];
+        Arrays.fill(index, -1);
+        final List<int[]> found = new ArrayList<>();
+        component = new int[n];
+        int next = 0;
+        int sp = 0;
+        for (int root = 0; root < n; ++root) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int depth = 0;
+            calls[depth++] = root;
+            index[root] = low[root] = next++;
+            stack[sp++] = root;
+            onStack[root] = true;
+            while (depth > 0) {
+                final int v = calls[depth - 1];
+                if (edge[v] < dependencies[v].length) {
+                    final int w = dependencies[v][edge[v]++];
+                    if (index[w] == -1) {
+                        calls[depth++] = w;
+                        index[w] = low[w] = next++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (depth > 0) {
+                    final int parent = calls[depth - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+                if (low[v] == index[v]) {
+                    int start = sp;
+                    do {
+                        onStack[stack[--start]] = false;
+                    } while (stack[start] != v);
+                    final int[] c = Arrays.copyOfRange(stack, start, sp);
+                    Arrays.sort(c);
+                    for (final int slot : c) {
+                        component[slot] = found.size();
+                    }
+                    found.add(c);
+                    sp = start;
+                }
+            }
+        }
+        sortByLevel(found);
+    }
+
+    /**
+     * Computes the level of each component, found in dependency order, and orders the components by level
+     */
+    private void sortByLevel(final List<int[]> found) {
+        final int[] levels = new int[found.size()];
+        int maxLevel = -1;
+        for (int c = 0; c < found.size(); ++c) {
+            for (final int slot : found.get(c)) {
+                for (final int dependency : dependencies[slot]) {
+                    if (component[dependency] != c) {
+                        levels[c] = Math.max(levels[c], levels[component[dependency]] + 1);
+                    }
+                }
+            }
+            maxLevel = Math.max(maxLevel, levels[c]);
+        }
+        // counting sort, stable so that the order within a level is deterministic
+        levelStarts = new int[maxLevel + 2];
+        for (final int level : levels) {
+            levelStarts[level + 1]++;
+        }
+        for (int l = 0; l < maxLevel + 1; ++l) {
+            levelStarts[l + 1] += levelStarts[l];
+        }
+        final int[] next = Arrays.copyOf(levelStarts, levelStarts.length);
+        components = new int[found.size()][];
+        for (int c = 0; c < found.size(); ++c) {
+            final int index = next[levels[c]]++;
+            components[index] = found.get(c);
+            for (final int slot : components[index]) {
+                component[slot] = index;
+            }
+        }
+    }
+
+    private static int[][] invert(final int[][] dependencies) {
+        final int[] counts = new int[dependencies.length];
+        for (final int[] deps : dependencies) {
+            for (final int dep : deps) {
+                counts[dep]++;
+            }
+        }
+        final int[][] inverted = new int[dependencies.length][];
+        for (int slot = 0; slot < dependencies.length; ++slot) {
+            inverted[slot] = new int[counts[slot]];
+        }
+        for (int slot = 0; slot < dependencies.length; ++slot) {
+            for (final int dep : dependencies[slot]) {
+                inverted[dep][--counts[dep]] = slot;
+            }
+        }
+        return inverted;
+    }
+
+    private static int[] remove(final int[] slots, final int slot) {
+        final int[] res = new int[slots.length - 1];
+        int i = 0;
+        for (final int s : slots) {
+            if (s != slot) {
+                res[i++] = s;
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,14 @@
+package com.keon.projects.calculator.logic;
+
+/**
+ * The executable form of a {@link CompiledExpression}: either the interpreted {@link Program} or a class generated
+ * by the {@link JitCompiler}.
+ */
+interface Evaluable {
+
+    /**
+     * @param vars the variable values, by slot
+     * @return the value of the expression
+     */
+    double eval(final double[] vars);
+}
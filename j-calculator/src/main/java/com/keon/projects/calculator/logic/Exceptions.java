@@ -57,3 +57,16 @@ class CyclicEquationsException extends RuntimeException {
         super(msg, t);
     }
 }
+
+class ShapeMismatchException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    ShapeMismatchException(final String msg) {
+        super(msg);
+    }
+
+    ShapeMismatchException(final String msg, final Throwable t) {
+        super(msg, t);
+    }
+}
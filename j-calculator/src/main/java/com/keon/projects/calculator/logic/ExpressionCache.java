@@ -0,0 +1,56 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A bounded, concurrent cache of compiled expressions keyed by their normalized text, evicting the least recently
+ * used expressions first.
+ */
+public final class ExpressionCache {
+
+    private final Cache<String, CompiledExpression> cache;
+
+    ExpressionCache(final int maxSize) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+    }
+
+    CompiledExpression get(final String normalized, final Function<String, CompiledExpression> compiler) {
+        try {
+            return cache.get(normalized, () -> compiler.apply(normalized));
+        } catch (final UncheckedExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public long hitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long missCount() {
+        return cache.stats().missCount();
+    }
+
+    public long evictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache{size=" + size() + ", hits=" + hitCount() + ", misses=" + missCount() + ", evictions=" + evictionCount() + "}";
+    }
+}
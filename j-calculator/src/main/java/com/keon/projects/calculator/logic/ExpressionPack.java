@@ -0,0 +1,381 @@
+package com.keon.projects.calculator.logic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A memory-mapped file of named, compiled expressions, each decoded the first time it is requested. The file is
+ * big-endian: the magic JCXP, the version, the count of expressions and a CRC32, then the strings, the offsets of the
+ * expressions and the expressions, each its strings and then its nodes in postfix order. The tags of version 1 are a
+ * subset of those of version 2, so both are decoded alike.
+ */
+public final class ExpressionPack {
+
+    static final int VERSION = 2;
+    private static final int MAGIC = 'J' << 24 | 'C' << 16 | 'X' << 8 | 'P';
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte CONSTANT = 0;
+    private static final byte VARIABLE = 1;
+    private static final byte BINARY = 2;
+    private static final byte CALL = 3;
+    private static final byte LAZY_CALL = 4;
+    private static final byte BINDING = 5;
+    private static final byte ARRAY_VARIABLE = 6;
+    private static final byte ARRAY_LITERAL = 7;
+    private static final byte ELEMENTWISE = 8;
+    private static final byte ARRAY_CALL = 9;
+
+    private static final Operator[] OPERATORS = Operator.values();
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final String[] strings;
+    private final int[] offsets;
+    private final Map<String, Integer> indexes;
+    private final CompiledExpression[] decoded;
+    /**
+     * The functions the expressions call, or null for those registered when they are decoded
+     */
+    private final FunctionTable functions;
+
+    private ExpressionPack(final Path path, final ByteBuffer buffer, final String[] strings, final int[] offsets,
+            final Map<String, Integer> indexes, final FunctionTable functions) {
+        this.path = path;
+        this.functions = functions;
+        this.buffer = buffer;
+        this.strings = strings;
+        this.offsets = offsets;
+        this.indexes = indexes;
+        this.decoded = new CompiledExpression[offsets.length];
+    }
+
+    /**
+     * Writes the expressions to a file, replacing it
+     */
+    public static void write(final Path path, final Map<String, CompiledExpression> expressions) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(records);
+        final int[] offsets = new int[expressions.size()];
+        int k = 0;
+        for (final Entry<String, CompiledExpression> e : expressions.entrySet()) {
+            offsets[k++] = out.size();
+            out.writeInt(intern(strings, e.getKey()));
+            out.writeInt(intern(strings, e.getValue().toString()));
+            final String[] vars = e.getValue().variables();
+            out.writeInt(vars.length);
+            for (final String var : vars) {
+                out.writeInt(intern(strings, var));
+            }
+            final Node[] nodes = Program.postorder(e.getValue().getRoot());
+            out.writeInt(nodes.length);
+            for (final Node n : nodes) {
+                writeNode(out, strings, n);
+            }
+        }
+
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream(records.size() + 16 * strings.size() + 4 * offsets.length);
+        final DataOutputStream data = new DataOutputStream(payload);
+        data.writeInt(strings.size());
+        for (final String s : strings.keySet()) {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+        for (final int offset : offsets) {
+            data.writeInt(offset);
+        }
+        records.writeTo(data);
+        data.flush();
+        final byte[] bytes = payload.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(offsets.length).putInt((int) crc.getValue()).flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer body = ByteBuffer.wrap(bytes);
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[] { header, body });
+            }
+        }
+    }
+
+    private static int intern(final Map<String, Integer> strings, final String s) {
+        final Integer index = strings.get(s);
+        if (index != null) {
+            return index;
+        }
+        strings.put(s, strings.size());
+        return strings.size() - 1;
+    }
+
+    private static void writeNode(final DataOutputStream out, final Map<String, Integer> strings, final Node n) throws IOException {
+        if (n instanceof Node.Constant) {
+            out.writeByte(CONSTANT);
+            out.writeDouble(((Node.Constant) n).value);
+        } else if (n instanceof Node.Variable) {
+            out.writeByte(VARIABLE);
+            out.writeInt(intern(strings, ((Node.Variable) n).name));
+            out.writeInt(((Node.Variable) n).slot);
+        } else if (n instanceof Node.Binary) {
+            out.writeByte(BINARY);
+            out.writeByte(((Node.Binary) n).op.ordinal());
+        } else if (n instanceof Node.Call) {
+            out.writeByte(CALL);
+            out.writeInt(intern(strings, ((Node.Call) n).name));
+            out.writeInt(((Node.Call) n).args.length);
+        } else if (n instanceof Node.LazyCall) {
+            out.writeByte(LAZY_CALL);
+            out.writeInt(intern(strings, ((Node.LazyCall) n).name));
+            out.writeInt(((Node.LazyCall) n).args.length);
+        } else if (n instanceof Node.Binding) {
+            final Node.Binding binding = (Node.Binding) n;
+            out.writeByte(BINDING);
+            out.writeInt(intern(strings, binding.name));
+            out.writeInt(intern(strings, binding.variable));
+            out.writeInt(binding.slot);
+            out.writeInt(binding.args.length);
+        } else if (n instanceof Node.ArrayVariable) {
+            final Node.ArrayVariable variable = (Node.ArrayVariable) n;
+            out.writeByte(ARRAY_VARIABLE);
+            out.writeInt(intern(strings, variable.name));
+            out.writeInt(variable.slot);
+            out.writeByte(variable.shape.length);
+            for (final int dim : variable.shape) {
+                out.writeInt(dim);
+            }
+        } else if (n instanceof Node.ArrayLiteral) {
+            out.writeByte(ARRAY_LITERAL);
+            out.writeInt(((Node.ArrayLiteral) n).elements.length);
+        } else if (n instanceof Node.Elementwise) {
+            out.writeByte(ELEMENTWISE);
+            out.writeByte(((Node.Elementwise) n).op.ordinal());
+        } else if (n instanceof Node.ArrayCall) {
+            out.writeByte(ARRAY_CALL);
+            out.writeInt(intern(strings, ((Node.ArrayCall) n).name));
+            out.writeInt(((Node.ArrayCall) n).args.length);
+        } else {
+            throw new UnsupportedOperationException("Unrecognized node type: " + n.getClass());
+        }
+    }
+
+    /**
+     * Maps a file written by {@link #write(Path, Map)} and verifies its checksum
+     *
+     * @throws IOException if the file is not a pack, of another version, or corrupt
+     */
+    public static ExpressionPack load(final Path path) throws IOException {
+        return load(path, (FunctionTable) null);
+    }
+
+    /**
+     * Maps a file written by {@link #write(Path, Map)}, whose expressions call the functions of the engine, e.g.
+     * expressions compiled by it
+     *
+     * @throws IOException if the file is not a pack, of another version, or corrupt
+     */
+    public static ExpressionPack load(final Path path, final CalculatorEngine engine) throws IOException {
+        return load(path, engine.functions());
+    }
+
+    private static ExpressionPack load(final Path path, final FunctionTable functions) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not an expression pack: " + path);
+            }
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an expression pack: " + path);
+        }
+        if (buffer.getInt(4) < 1 || buffer.getInt(4) > VERSION) {
+            throw new IOException("Unsupported version " + buffer.getInt(4) + " of expression pack " + path + ". Expected " + VERSION);
+        }
+        final int count = buffer.getInt(8);
+        final CRC32 crc = new CRC32();
+        final ByteBuffer payload = buffer.duplicate();
+        payload.position(HEADER_SIZE);
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(12)) {
+            throw new IOException("Checksum mismatch in expression pack " + path);
+        }
+        try {
+            int pos = HEADER_SIZE;
+            final String[] strings = new String[buffer.getInt(pos)];
+            pos += 4;
+            for (int i = 0; i < strings.length; ++i) {
+                final byte[] bytes = new byte[buffer.getInt(pos)];
+                final ByteBuffer s = buffer.duplicate();
+                s.position(pos + 4);
+                s.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                pos += 4 + bytes.length;
+            }
+            final int[] offsets = new int[count];
+            final int records = pos + 4 * count;
+            final Map<String, Integer> indexes = new HashMap<>(count * 2);
+            for (int i = 0; i < count; ++i) {
+                offsets[i] = records + buffer.getInt(pos + 4 * i);
+                indexes.put(strings[buffer.getInt(offsets[i])], i);
+            }
+            return new ExpressionPack(path, buffer, strings, offsets, indexes, functions);
+        } catch (final IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed expression pack " + path, e);
+        }
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the names of the expressions
+     */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(indexes.keySet());
+    }
+
+    /**
+     * @return the expression of the given name, or null if there is none
+     * @throws UnsupportedOperationException if the expression calls a function that is not registered, or not a
+     *                                       function of the engine the pack was loaded for
+     * @throws UncheckedIOException          if the expression is malformed, e.g. truncated
+     */
+    public CompiledExpression get(final String name) {
+        final Integer index = indexes.get(name);
+        if (index == null) {
+            return null;
+        }
+        // a race decodes an expression twice, into equivalent immutable expressions
+        CompiledExpression e = decoded[index];
+        if (e == null) {
+            try {
+                e = decoded[index] = decode(offsets[index]);
+            } catch (final IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException ex) {
+                throw new UncheckedIOException(new IOException("Malformed expression " + name + " in expression pack " + path, ex));
+            }
+        }
+        return e;
+    }
+
+    private CompiledExpression decode(int pos) {
+        pos += 4;
+        final String text = strings[buffer.getInt(pos)];
+        final String[] vars = new String[buffer.getInt(pos + 4)];
+        pos += 8;
+        for (int i = 0; i < vars.length; ++i, pos += 4) {
+            vars[i] = strings[buffer.getInt(pos)];
+        }
+        final int count = buffer.getInt(pos);
+        pos += 4;
+        final FunctionTable functions = this.functions != null ? this.functions : Function.table();
+        final Node[] stack = new Node[count];
+        int sp = 0;
+        for (int i = 0; i < count; ++i) {
+            final byte tag = buffer.get(pos++);
+            switch (tag) {
+            case CONSTANT:
+                stack[sp++] = new Node.Constant(buffer.getDouble(pos));
+                pos += 8;
+                break;
+            case VARIABLE:
+                stack[sp++] = new Node.Variable(strings[buffer.getInt(pos)], buffer.getInt(pos + 4));
+                pos += 8;
+                break;
+            case BINARY:
+                sp--;
+                stack[sp - 1] = new Node.Binary(operator(buffer.get(pos++)), stack[sp - 1], stack[sp]);
+                break;
+            case ELEMENTWISE:
+                sp--;
+                stack[sp - 1] = new Node.Elementwise(operator(buffer.get(pos++)), stack[sp - 1], stack[sp]);
+                break;
+            case ARRAY_VARIABLE: {
+                final String name = strings[buffer.getInt(pos)];
+                final int slot = buffer.getInt(pos + 4);
+                final int[] shape = new int[buffer.get(pos + 8)];
+                pos += 9;
+                for (int k = 0; k < shape.length; ++k, pos += 4) {
+                    shape[k] = buffer.getInt(pos);
+                }
+                stack[sp++] = new Node.ArrayVariable(name, slot, shape);
+                break;
+            }
+            case ARRAY_LITERAL: {
+                final int n = buffer.getInt(pos);
+                pos += 4;
+                sp -= n;
+                stack[sp] = new Node.ArrayLiteral(Arrays.copyOfRange(stack, sp, sp + n));
+                sp++;
+                break;
+            }
+            case ARRAY_CALL: {
+                final String name = strings[buffer.getInt(pos)];
+                final int n = buffer.getInt(pos + 4);
+                pos += 8;
+                sp -= n;
+                final Node[] args = Arrays.copyOfRange(stack, sp, sp + n);
+                stack[sp++] = new Node.ArrayCall(name, functions.get(name), args);
+                break;
+            }
+            case CALL:
+            case LAZY_CALL: {
+                final String name = strings[buffer.getInt(pos)];
+                final int n = buffer.getInt(pos + 4);
+                pos += 8;
+                sp -= n;
+                final Node[] args = Arrays.copyOfRange(stack, sp, sp + n);
+                final Ifunction f = functions.get(name);
+                stack[sp++] = tag == CALL ? new Node.Call(name, f, args) : new Node.LazyCall(name, f, args);
+                break;
+            }
+            case BINDING: {
+                final String name = strings[buffer.getInt(pos)];
+                final String variable = strings[buffer.getInt(pos + 4)];
+                final int slot = buffer.getInt(pos + 8);
+                final int n = buffer.getInt(pos + 12);
+                pos += 16;
+                final Node body = stack[--sp];
+                sp -= n;
+                final Node[] args = Arrays.copyOfRange(stack, sp, sp + n);
+                stack[sp++] = new Node.Binding(name, functions.get(name), variable, slot, body, args);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unrecognized node tag " + tag);
+            }
+        }
+        if (sp != 1) {
+            throw new IllegalArgumentException(count + " nodes do not make a single expression");
+        }
+        return new CompiledExpression(text, vars, stack[0]);
+    }
+
+    private static Operator operator(final byte ordinal) {
+        if (ordinal < 0 || ordinal >= OPERATORS.length) {
+            throw new IllegalArgumentException("Unrecognized operator " + ordinal);
+        }
+        return OPERATORS[ordinal];
+    }
+}
@@ -5,14 +5,71 @@ class ExtendedMath {
     private ExtendedMath() {}
     
     static double avg(double... args) {
+        return avg(args, 0, args.length);
+    }
+
+    static double avg(final double[] args, final int from, final int count) {
         double total = 0.0;
-        for(final double arg : args) {
-            total += arg;
+        for (int i = from; i < from + count; ++i) {
+            total += args[i];
         }
-        return total/args.length;
+        return total/count;
     }
    
 
+    static double total(final double[] args, final int from, final int count) {
+        double total = 0.0;
+        for (int i = from; i < from + count; ++i) {
+            total += args[i];
+        }
+        return total;
+    }
+
+    /**
+     * norm(x, y, ...): the Euclidean norm, e.g. of a vector
+     */
+    static double norm(final double[] args, final int from, final int count) {
+        double total = 0.0;
+        for (int i = from; i < from + count; ++i) {
+            total += args[i] * args[i];
+        }
+        return Math.sqrt(total);
+    }
+
+    static double min(final double[] args, final int from, final int count) {
+        double min = args[from];
+        for (int i = from + 1; i < from + count; ++i) {
+            min = Math.min(min, args[i]);
+        }
+        return min;
+    }
+
+    static double max(final double[] args, final int from, final int count) {
+        double max = args[from];
+        for (int i = from + 1; i < from + count; ++i) {
+            max = Math.max(max, args[i]);
+        }
+        return max;
+    }
+
+    /**
+     * if(condition, then, else): evaluates then if the condition is not 0, else otherwise
+     */
+    static double conditional(final Evaluable[] args, final double[] vars) {
+        return args[0].eval(vars) != 0 ? args[1].eval(vars) : args[2].eval(vars);
+    }
+
+    /**
+     * coalesce(a, b, ...): the first argument that is not NaN, without evaluating the ones after it
+     */
+    static double coalesce(final Evaluable[] args, final double[] vars) {
+        double value = Double.NaN;
+        for (int i = 0; i < args.length && Double.isNaN(value); ++i) {
+            value = args[i].eval(vars);
+        }
+        return value;
+    }
+
     public static double root(double a, double b) {
         if(a < 0) {
             if(b%2 == 0)
@@ -1,70 +1,375 @@
 package com.keon.projects.calculator.logic;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.function.ToDoubleFunction;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.function.DoubleUnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * The registry of functions, by name: the built-in functions, then those of the {@link FunctionProvider}s found by
+ * {@link ServiceLoader}, then those registered later. A provider or function that fails to register is logged and
+ * skipped.
+ */
 class Function {
 
-    private static final Map<String, Ifunction> F_MAP = new HashMap<>();
-    
+    private static final Logger LOGGER = Logger.getLogger(Function.class.getName());
+
+    private static volatile FunctionTable table = FunctionTable.EMPTY;
+
     private Function() {}
 
     static {
-        F_MAP.put("sin", Ifunction.constarg(1, x -> Math.sin(x[0])));
-        F_MAP.put("cos", Ifunction.constarg(1, x -> Math.cos(x[0])));
-        F_MAP.put("tan", Ifunction.constarg(1, x -> Math.tan(x[0])));
-        F_MAP.put("exp", Ifunction.constarg(1, x -> Math.exp(x[0])));
-        F_MAP.put("ln", Ifunction.constarg(1, x -> Math.log(x[0])));
-        F_MAP.put("avg", Ifunction.vararg(1, ExtendedMath::avg));
-        F_MAP.put("sqrt", Ifunction.constarg(1, x -> Math.sqrt(x[0])));
+        register("sin", Ifunction.unary(Math::sin));
+        register("cos", Ifunction.unary(Math::cos));
+        register("tan", Ifunction.unary(Math::tan));
+        register("exp", Ifunction.unary(Math::exp));
+        register("ln", Ifunction.unary(Math::log));
+        register("avg", Ifunction.vararg(1, ExtendedMath::avg));
+        register("sqrt", Ifunction.unary(Math::sqrt));
+        register("min", Ifunction.vararg(1, ExtendedMath::min));
+        register("max", Ifunction.vararg(1, ExtendedMath::max));
+        register("total", Ifunction.vararg(1, ExtendedMath::total));
+        register("norm", Ifunction.vararg(1, ExtendedMath::norm));
+        register("if", Ifunction.lazy(false, 3, ExtendedMath::conditional));
+        register("coalesce", Ifunction.lazy(true, 1, ExtendedMath::coalesce));
+        register("integrate", Ifunction.binding(4, 5, 1, 0, Quadrature::integrate));
+        register("sum", Ifunction.binding(4, 4, 0, 3, Quadrature::sum));
+        register("dot", Ifunction.array(2, Matrices.DOT));
+        register("matmul", Ifunction.array(2, Matrices.MATMUL));
+        register("transpose", Ifunction.array(1, Matrices.TRANSPOSE));
+        final Iterator<FunctionProvider> providers = ServiceLoader.load(FunctionProvider.class).iterator();
+        while (true) {
+            final FunctionProvider provider;
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                provider = providers.next();
+            } catch (final ServiceConfigurationError e) {
+                // the iterator moves on to the next provider
+                LOGGER.log(Level.WARNING, "Could not load a function provider", e);
+                continue;
+            }
+            register(provider);
+        }
+    }
+
+    private static void register(final FunctionProvider provider) {
+        final Collection<FunctionDefinition> functions;
+        try {
+            functions = provider.functions();
+        } catch (final RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not get the functions of " + provider.getClass().getName(), e);
+            return;
+        }
+        for (final FunctionDefinition f : functions) {
+            try {
+                register(f);
+            } catch (final RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not register a function of " + provider.getClass().getName(), e);
+            }
+        }
     }
 
     public static String[] getFunctions() {
-        return F_MAP.keySet().toArray(new String[F_MAP.size()]);
+        return table.names();
     }
     
     public static Ifunction get(final String fName) {
-        final Ifunction f = F_MAP.get(fName);
-        if(f == null) {
-            throw new UnsupportedOperationException(fName + " is not a supported function");
-        }
-        return f;
+        return table.get(fName);
+    }
+
+    /**
+     * @return the name of the function equal to s[from..to), or null if there is none
+     */
+    static String nameOf(final CharSequence s, final int from, final int to) {
+        return table.nameOf(s, from, to);
+    }
+
+    /**
+     * @return the functions registered so far
+     */
+    static FunctionTable table() {
+        return table;
+    }
+
+    static void register(final FunctionDefinition f) {
+        register(f.getName(), Ifunction.user(f));
+    }
+
+    private static synchronized void register(final String name, final Ifunction f) {
+        table = table.with(name, f);
     }
 }
 
+/**
+ * A function of primitive doubles. Arguments are passed as a range of an array, so that the function can be applied
+ * to its arguments in place on an operand stack without copying or boxing them. Functions of a single argument are
+ * also available as a {@link DoubleUnaryOperator}.
+ * <p>
+ * A lazy function is instead passed its arguments unevaluated, and evaluates only the ones it needs, e.g. a single
+ * branch of if(condition, then, else).
+ * <p>
+ * A binding function takes the name of a variable as an argument, and an expression of that variable that it
+ * evaluates repeatedly, e.g. integrate(x^2, x, 0, 1).
+ * <p>
+ * An array function takes vectors and matrices, e.g. matmul(a, b), see {@link Node#shape()}. Other functions take
+ * arrays too: a function of a single argument is applied to each value, and one of a variable count of arguments to
+ * all the values, e.g. max(v).
+ * <p>
+ * A pure function's value depends only on its arguments, so that calls with constant arguments can be folded.
+ */
 class Ifunction {
 
-    private final boolean vararg;
+    /**
+     * The body of a function of args[from], ..., args[from+count-1]
+     */
+    interface Body {
+
+        double apply(double[] args, int from, int count);
+    }
+
+    /**
+     * The body of a lazy function, which evaluates its arguments against vars as needed
+     */
+    interface LazyBody {
+
+        double apply(Evaluable[] args, double[] vars);
+    }
+
+    /**
+     * The body of a binding function
+     */
+    interface BindingBody {
+
+        /**
+         * @param body the expression of the bound variable, to be evaluated with the variable at env[slot] and the
+         *             enclosing variables below it
+         * @param vars the values of the enclosing variables, by slot
+         * @param slot the slot of the bound variable
+         * @param args the values of the other arguments, args[from..from+count), to be read before evaluating body
+         */
+        double apply(Evaluable body, double[] vars, int slot, double[] args, int from, int count);
+    }
+
+    /**
+     * The body of an array function, whose arguments are flattened one after the other
+     */
+    interface ArrayBody {
+
+        /**
+         * @param args the shapes of the arguments
+         * @return the shape of the value
+         * @throws ShapeMismatchException if the function does not take arguments of those shapes
+         */
+        int[] shape(int[][] args);
+
+        /**
+         * @param args   holds the arguments from args[from] on
+         * @param shapes the shapes of the arguments
+         * @param out    receives the value from out[to] on, which is not within the arguments
+         */
+        void apply(double[] args, int from, int[][] shapes, double[] out, int to);
+    }
+
     private final int expectedArgCount;
-    private final ToDoubleFunction<double[]> f;
+    private final int maxArgCount;
+    private final Body f;
+    private final DoubleUnaryOperator unary;
+    private final LazyBody lazy;
+    private final BindingBody binding;
+    private final ArrayBody array;
+    private final int variableArg;
+    private final int bodyArg;
+    private final boolean pure;
 
-    private Ifunction(final boolean vararg, final int expectedArgCount,
-            ToDoubleFunction<double[]> f) {
+    private Ifunction(final int expectedArgCount, final int maxArgCount, final Body f, final DoubleUnaryOperator unary,
+            final LazyBody lazy, final BindingBody binding, final ArrayBody array, final int variableArg, final int bodyArg,
+            final boolean pure) {
         this.expectedArgCount = expectedArgCount;
+        this.maxArgCount = maxArgCount;
         this.f = f;
-        this.vararg = vararg;
+        this.unary = unary;
+        this.lazy = lazy;
+        this.binding = binding;
+        this.array = array;
+        this.variableArg = variableArg;
+        this.bodyArg = bodyArg;
+        this.pure = pure;
+    }
+
+    private Ifunction(final boolean vararg, final int expectedArgCount, final Body f, final DoubleUnaryOperator unary,
+            final LazyBody lazy) {
+        this(expectedArgCount, vararg ? Integer.MAX_VALUE : expectedArgCount, f, unary, lazy, null, null, -1, -1, true);
+    }
+
+    static Ifunction unary(final DoubleUnaryOperator f) {
+        return new Ifunction(false, 1, (args, from, count) -> f.applyAsDouble(args[from]), f, null);
+    }
+
+    static Ifunction constarg(final int expectedArgCount, final Body f) {
+        return new Ifunction(false, expectedArgCount, f, null, null);
+    }
+
+    static Ifunction vararg(final int expectedArgCount, final Body f) {
+        return new Ifunction(true, expectedArgCount, f, null, null);
+    }
+
+    /**
+     * @param minArgCount the count of arguments, including the variable and the body
+     * @param maxArgCount the maximum count of arguments
+     * @param variableArg the index of the argument naming the bound variable
+     * @param bodyArg     the index of the argument evaluated for values of the variable
+     */
+    static Ifunction binding(final int minArgCount, final int maxArgCount, final int variableArg, final int bodyArg,
+            final BindingBody f) {
+        final Body eager = (args, from, count) -> {
+            throw new UnsupportedOperationException("A binding function has no value for given arguments");
+        };
+        return new Ifunction(minArgCount, maxArgCount, eager, null, null, f, null, variableArg, bodyArg, true);
+    }
+
+    static Ifunction array(final int argCount, final ArrayBody f) {
+        final Body eager = (args, from, count) -> {
+            throw new UnsupportedOperationException("An array function is applied to arrays on an operand stack");
+        };
+        return new Ifunction(argCount, argCount, eager, null, null, null, f, -1, -1, true);
+    }
+
+    /**
+     * A registered user function, whose body is wrapped in a {@link Memo} if it is memoized
+     */
+    static Ifunction user(final FunctionDefinition def) {
+        if (def.getMemoization() > 0 && !def.isPure()) {
+            throw new IllegalArgumentException("Impure function " + def.getName() + " cannot be memoized");
+        }
+        final FunctionDefinition.Body body = def.getBody();
+        final Body f = def.getMemoization() > 0 ? new Memo(body::apply, def.getMemoization()) : body::apply;
+        return new Ifunction(def.getMinArgs(), def.getMaxArgs(), f, null, null, null, null, -1, -1, def.isPure());
+    }
+
+    /**
+     * @param vararg true if expectedArgCount is the minimum count of arguments, false if it is the exact count
+     */
+    static Ifunction lazy(final boolean vararg, final int expectedArgCount, final LazyBody f) {
+        // applied to values, the arguments are constants
+        final Body eager = (args, from, count) -> {
+            final Evaluable[] constants = new Evaluable[count];
+            for (int i = 0; i < count; ++i) {
+                final double value = args[from + i];
+                constants[i] = vars -> value;
+            }
+            return f.apply(constants, CompiledExpression.NO_VARS);
+        };
+        return new Ifunction(vararg, expectedArgCount, eager, null, f);
+    }
+
+    double apply(final double... args) {
+        checkArgCount(args.length);
+        return f.apply(args, 0, args.length);
+    }
+
+    /**
+     * Applies the function to arguments whose count was already checked by {@link #checkArgCount(int)}
+     */
+    double applyUnchecked(final double[] args) {
+        return f.apply(args, 0, args.length);
+    }
+
+    /**
+     * Applies the function to args[from..from+count), whose count was already checked by {@link #checkArgCount(int)}
+     */
+    double applyUnchecked(final double[] args, final int from, final int count) {
+        return f.apply(args, from, count);
+    }
+
+    boolean isPure() {
+        return pure;
+    }
+
+    boolean isLazy() {
+        return lazy != null;
+    }
+
+    /**
+     * Applies a lazy function to unevaluated arguments, whose count was already checked by
+     * {@link #checkArgCount(int)}
+     */
+    double applyLazy(final Evaluable[] args, final double[] vars) {
+        return lazy.apply(args, vars);
+    }
+
+    boolean isBinding() {
+        return binding != null;
+    }
+
+    /**
+     * @return the index of the argument naming the bound variable of a binding function
+     */
+    int variableArg() {
+        return variableArg;
+    }
+
+    /**
+     * @return the index of the argument that is the expression of the bound variable of a binding function
+     */
+    int bodyArg() {
+        return bodyArg;
+    }
+
+    double applyBinding(final Evaluable body, final double[] vars, final int slot, final double[] args, final int from,
+            final int count) {
+        return binding.apply(body, vars, slot, args, from, count);
+    }
+
+    boolean isArray() {
+        return array != null;
+    }
+
+    /**
+     * @return true if the function takes a variable count of arguments
+     */
+    boolean isVararg() {
+        return maxArgCount != expectedArgCount;
+    }
+
+    /**
+     * @see ArrayBody#shape(int[][])
+     */
+    int[] shape(final int[][] args) {
+        return array.shape(args);
     }
 
-    static Ifunction constarg(final int expectedArgCount, final ToDoubleFunction<double[]> f) {
-        return new Ifunction(false, expectedArgCount, f);
+    /**
+     * @see ArrayBody#apply(double[], int, int[][], double[], int)
+     */
+    void applyArray(final double[] args, final int from, final int[][] shapes, final double[] out, final int to) {
+        array.apply(args, from, shapes, out, to);
     }
 
-    static Ifunction vararg(final int expectedArgCount, final ToDoubleFunction<double[]> f) {
-        return new Ifunction(true, expectedArgCount, f);
+    /**
+     * @return the function if it takes a single argument, null otherwise
+     */
+    DoubleUnaryOperator unary() {
+        return unary;
     }
 
-    Double apply(final double... args) {
+    void checkArgCount(final int argCount) {
         assert (expectedArgCount >= 0);
-        if (vararg) {
-            if (args.length < expectedArgCount) {
-                throw new ArgumentCountException(
-                        "expected minimum of: " + expectedArgCount + ". Got " + args.length + " args");
+        if (expectedArgCount == maxArgCount) {
+            if (argCount != expectedArgCount) {
+                throw new ArgumentCountException("expected: " + expectedArgCount + ". Got " + argCount + " args");
             }
-        } else if (args.length != expectedArgCount) {
-            throw new ArgumentCountException("expected: " + expectedArgCount + ". Got " + args.length + " args");
+        } else if (argCount < expectedArgCount) {
+            throw new ArgumentCountException(
+                    "expected minimum of: " + expectedArgCount + ". Got " + argCount + " args");
+        } else if (argCount > maxArgCount) {
+            throw new ArgumentCountException(
+                    "expected maximum of: " + maxArgCount + ". Got " + argCount + " args");
         }
-        return f.applyAsDouble(args);
     }
 }
 
@@ -0,0 +1,98 @@
+package com.keon.projects.calculator.logic;
+
+/**
+ * A user function to be registered with {@link Calculator#register(FunctionDefinition)}, or supplied by a
+ * {@link FunctionProvider}. Functions are pure unless {@link #impure()}, so calls with constant arguments are folded.
+ */
+public final class FunctionDefinition {
+
+    /**
+     * The body of a function of args[from], ..., args[from+count-1]. The arguments must not be modified, nor kept
+     * after the call.
+     */
+    public interface Body {
+
+        double apply(double[] args, int from, int count);
+    }
+
+    private final String name;
+    private final Body body;
+    private final int minArgs;
+    private int maxArgs;
+    private boolean pure = true;
+    private int memoization;
+
+    private FunctionDefinition(final String name, final int argCount, final Body body) {
+        this.name = name;
+        this.body = body;
+        this.minArgs = argCount;
+        this.maxArgs = argCount;
+    }
+
+    /**
+     * @param name     the name the function is called by
+     * @param argCount the count of arguments of the function, or the minimum count if it has a maximum
+     * @param body     the function
+     */
+    public static FunctionDefinition of(final String name, final int argCount, final Body body) {
+        if (argCount < 0) {
+            throw new IllegalArgumentException("Negative count of arguments for " + name + ": " + argCount);
+        }
+        return new FunctionDefinition(name, argCount, body);
+    }
+
+    /**
+     * @param maxArgs the maximum count of arguments, Integer.MAX_VALUE for any
+     */
+    public FunctionDefinition withMaxArgs(final int maxArgs) {
+        if (maxArgs < minArgs) {
+            throw new IllegalArgumentException("Maximum count of arguments of " + name + " is below the minimum: " + maxArgs);
+        }
+        this.maxArgs = maxArgs;
+        return this;
+    }
+
+    /**
+     * Declares the function impure, e.g. random() or now(), so that its calls are neither folded nor memoized
+     */
+    public FunctionDefinition impure() {
+        this.pure = false;
+        return this;
+    }
+
+    /**
+     * @param entries the count of values the function caches by arguments, rounded up to a power of 2, or 0 for
+     *                none. A value is evicted when the arguments of another call map to its entry.
+     */
+    public FunctionDefinition withMemoization(final int entries) {
+        if (entries < 0) {
+            throw new IllegalArgumentException("Negative memoization size for " + name + ": " + entries);
+        }
+        this.memoization = entries;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Body getBody() {
+        return body;
+    }
+
+    public int getMinArgs() {
+        return minArgs;
+    }
+
+    public int getMaxArgs() {
+        return maxArgs;
+    }
+
+    public boolean isPure() {
+        return pure;
+    }
+
+    public int getMemoization() {
+        return memoization;
+    }
+}
@@ -0,0 +1,12 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Collection;
+
+/**
+ * Supplies user functions, registered once when the registry of functions is initialized. Implementations are listed
+ * in META-INF/services/com.keon.projects.calculator.logic.FunctionProvider and need a public no-arg constructor.
+ */
+public interface FunctionProvider {
+
+    Collection<FunctionDefinition> functions();
+}
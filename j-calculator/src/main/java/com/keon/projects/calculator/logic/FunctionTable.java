@@ -0,0 +1,70 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable table of functions by name, which expressions are parsed against. Adding a function makes a new table,
+ * so a table can be read from any thread without locking, and a parser sees the same functions from start to end.
+ */
+final class FunctionTable {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    static final FunctionTable EMPTY = new FunctionTable(Collections.emptyMap(), new Trie<>());
+
+    private final Map<String, Ifunction> functions;
+    /**
+     * The names of the functions, for the {@link Lexer}. Never modified once the table is built.
+     */
+    private final Trie<String> names;
+
+    private FunctionTable(final Map<String, Ifunction> functions, final Trie<String> names) {
+        this.functions = functions;
+        this.names = names;
+    }
+
+    /**
+     * @return a table with the functions of this one and f
+     * @throws IllegalArgumentException if the name is not an identifier, or is that of a function of this table
+     */
+    FunctionTable with(final String name, final Ifunction f) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Bad function name: '" + name + "'. Names are letters, digits and _, not starting with a digit");
+        }
+        if (functions.containsKey(name)) {
+            throw new IllegalArgumentException("Function defined more than once: " + name);
+        }
+        final Map<String, Ifunction> copy = new HashMap<>(functions);
+        copy.put(name, f);
+        final Trie<String> names = new Trie<>();
+        for (final String existing : copy.keySet()) {
+            names.put(existing, existing);
+        }
+        return new FunctionTable(Collections.unmodifiableMap(copy), names);
+    }
+
+    /**
+     * @throws UnsupportedOperationException if there is no function of that name
+     */
+    Ifunction get(final String name) {
+        final Ifunction f = functions.get(name);
+        if (f == null) {
+            throw new UnsupportedOperationException(name + " is not a supported function");
+        }
+        return f;
+    }
+
+    /**
+     * @return the name of the function equal to s[from..to), or null if there is none
+     */
+    String nameOf(final CharSequence s, final int from, final int to) {
+        return names.get(s, from, to);
+    }
+
+    String[] names() {
+        return functions.keySet().toArray(new String[functions.size()]);
+    }
+}
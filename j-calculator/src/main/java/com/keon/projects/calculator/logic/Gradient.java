@@ -0,0 +1,290 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates a {@link CompiledExpression} and its partial derivatives in a single pass, by forward mode automatic
+ * differentiation.
+ */
+public final class Gradient {
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final String[] vars;
+    private final String[] wrt;
+    private final Program program;
+    /**
+     * The index in the gradient of the derivative with respect to each slot, or -1
+     */
+    private final int[] components;
+
+    Gradient(final String[] vars, final Node root, final Program program, final String[] wrt) {
+        for (final Node n : Program.postorder(root)) {
+            checkDifferentiable(n);
+        }
+        this.vars = vars;
+        this.wrt = wrt;
+        this.program = program;
+        this.components = new int[vars.length];
+        Arrays.fill(components, -1);
+        for (int k = 0; k < wrt.length; ++k) {
+            final int slot = Arrays.asList(vars).indexOf(wrt[k]);
+            if (slot == -1) {
+                throw new IllegalArgumentException("Not a variable of the expression: " + wrt[k]);
+            }
+            components[slot] = k;
+        }
+    }
+
+    /**
+     * @return the names of the variables the gradient is with respect to, in the order of the gradient
+     */
+    public String[] getVariables() {
+        return wrt.clone();
+    }
+
+    /**
+     * @param values   the variable values, in the same order as {@link CompiledExpression#getVariables()}
+     * @param gradient receives the partial derivatives, in the same order as {@link #getVariables()}
+     * @return the value of the expression
+     */
+    public double eval(final double[] values, final double[] gradient) {
+        if (values.length != vars.length) {
+            throw new ArgumentCountException("Expected values for " + Arrays.toString(vars) + ". Got " + values.length + " values");
+        }
+        if (gradient.length < wrt.length) {
+            throw new IllegalArgumentException("Expected room for " + wrt.length + " derivatives. Got " + gradient.length);
+        }
+        return eval(program, values, gradient, 0);
+    }
+
+    /**
+     * Evaluates the program, writing its tangent to out[offset..offset+n)
+     */
+    private double eval(final Program program, final double[] vars, final double[] out, final int offset) {
+        final int n = wrt.length;
+        final Scratch scratch = SCRATCH.get();
+        final int depth = scratch.depth;
+        if (depth == scratch.stacks.length) {
+            scratch.stacks = Arrays.copyOf(scratch.stacks, 2 * depth);
+            scratch.tangents = Arrays.copyOf(scratch.tangents, 2 * depth);
+        }
+        if (scratch.stacks[depth] == null || scratch.stacks[depth].length < program.maxStack()) {
+            scratch.stacks[depth] = new double[program.maxStack()];
+        }
+        if (scratch.tangents[depth] == null || scratch.tangents[depth].length < program.maxStack() * n) {
+            scratch.tangents[depth] = new double[program.maxStack() * n];
+        }
+        final double[] stack = scratch.stacks[depth];
+        final double[] tangents = scratch.tangents[depth];
+        scratch.depth = depth + 1;
+        try {
+            return eval(program, vars, out, offset, stack, tangents);
+        } finally {
+            scratch.depth = depth;
+        }
+    }
+
+    private double eval(final Program program, final double[] vars, final double[] out, final int offset, final double[] stack,
+            final double[] tangents) {
+        final int n = wrt.length;
+        int sp = 0;
+        for (final Node node : program.code()) {
+            if (node instanceof Node.Constant) {
+                stack[sp] = ((Node.Constant) node).value;
+                Arrays.fill(tangents, sp * n, sp * n + n, 0);
+                sp++;
+            } else if (node instanceof Node.Variable) {
+                final int slot = ((Node.Variable) node).slot;
+                stack[sp] = vars[slot];
+                Arrays.fill(tangents, sp * n, sp * n + n, 0);
+                if (components[slot] != -1) {
+                    tangents[sp * n + components[slot]] = 1;
+                }
+                sp++;
+            } else if (node instanceof Node.Binary) {
+                sp--;
+                binary(((Node.Binary) node).op, stack, tangents, sp - 1, n);
+            } else if (node instanceof Node.Call) {
+                final Node.Call call = (Node.Call) node;
+                sp -= call.args.length;
+                call(call, stack, tangents, sp, n);
+                sp++;
+            } else {
+                stack[sp] = lazyCall((Node.LazyCall) node, vars, tangents, sp * n);
+                sp++;
+            }
+        }
+        System.arraycopy(tangents, 0, out, offset, n);
+        return stack[0];
+    }
+
+    /**
+     * Applies the operator to the values at i and i+1, leaving the result at i
+     */
+    private static void binary(final Operator op, final double[] stack, final double[] t, final int i, final int n) {
+        final double a = stack[i];
+        final double b = stack[i + 1];
+        final double v = op.apply(a, b);
+        final int da = i * n;
+        final int db = da + n;
+        switch (op) {
+        case PLUS:
+            for (int k = 0; k < n; ++k) {
+                t[da + k] += t[db + k];
+            }
+            break;
+        case MINUS:
+            for (int k = 0; k < n; ++k) {
+                t[da + k] -= t[db + k];
+            }
+            break;
+        case TIMES:
+            for (int k = 0; k < n; ++k) {
+                t[da + k] = t[da + k] * b + a * t[db + k];
+            }
+            break;
+        case DIVIDE:
+            for (int k = 0; k < n; ++k) {
+                t[da + k] = (t[da + k] - v * t[db + k]) / b;
+            }
+            break;
+        case MODULO:
+            // a % b = a - q*b for the integer q = (a - v) / b
+            final double q = (a - v) / b;
+            for (int k = 0; k < n; ++k) {
+                t[da + k] -= q * t[db + k];
+            }
+            break;
+        case POWER:
+            chain(t, da, b * Math.pow(a, b - 1), v * Math.log(a), n);
+            break;
+        case ROOT:
+            // ExtendedMath.root keeps the sign of a, so its derivatives are in terms of |a|
+            chain(t, da, v / (b * a), -v * Math.log(Math.abs(a)) / (b * b), n);
+            break;
+        default:
+            // comparisons are piecewise constant
+            Arrays.fill(t, da, da + n, 0);
+        }
+        stack[i] = v;
+    }
+
+    /**
+     * t[da] = dfa * t[da] + dfb * t[db] for every component, where a term whose tangent is 0 is 0 even if its partial
+     * derivative is not finite, e.g. the derivative of x^2 with respect to the exponent at x < 0
+     */
+    private static void chain(final double[] t, final int da, final double dfa, final double dfb, final int n) {
+        final int db = da + n;
+        for (int k = 0; k < n; ++k) {
+            t[da + k] = (t[da + k] == 0 ? 0 : dfa * t[da + k]) + (t[db + k] == 0 ? 0 : dfb * t[db + k]);
+        }
+    }
+
+    private static void call(final Node.Call call, final double[] stack, final double[] t, final int base, final int n) {
+        final int count = call.args.length;
+        final double x = stack[base];
+        final double v = call.f.applyUnchecked(stack, base, count);
+        final int dx = base * n;
+        switch (call.name) {
+        case "sin":
+            scale(t, dx, Math.cos(x), n);
+            break;
+        case "cos":
+            scale(t, dx, -Math.sin(x), n);
+            break;
+        case "tan":
+            scale(t, dx, 1 + v * v, n);
+            break;
+        case "exp":
+            scale(t, dx, v, n);
+            break;
+        case "ln":
+            scale(t, dx, 1 / x, n);
+            break;
+        case "sqrt":
+            scale(t, dx, 0.5 / v, n);
+            break;
+        case "avg":
+            for (int k = 0; k < n; ++k) {
+                double sum = 0;
+                for (int i = 0; i < count; ++i) {
+                    sum += t[dx + i * n + k];
+                }
+                t[dx + k] = sum / count;
+            }
+            break;
+        case "min":
+        case "max":
+            // the derivative of the argument that is the result
+            int arg = 0;
+            while (arg < count - 1 && Double.doubleToLongBits(stack[base + arg]) != Double.doubleToLongBits(v)) {
+                arg++;
+            }
+            System.arraycopy(t, dx + arg * n, t, dx, n);
+            break;
+        default:
+            throw new UnsupportedOperationException("Cannot differentiate " + call.name);
+        }
+        stack[base] = v;
+    }
+
+    private static void scale(final double[] t, final int dx, final double derivative, final int n) {
+        for (int k = 0; k < n; ++k) {
+            t[dx + k] = t[dx + k] == 0 ? 0 : derivative * t[dx + k];
+        }
+    }
+
+    private double lazyCall(final Node.LazyCall call, final double[] vars, final double[] t, final int offset) {
+        switch (call.name) {
+        case "if":
+            return eval(call.programs[call.programs[0].eval(vars) != 0 ? 1 : 2], vars, t, offset);
+        case "coalesce":
+            double v = Double.NaN;
+            for (int i = 0; i < call.programs.length && Double.isNaN(v); ++i) {
+                v = eval(call.programs[i], vars, t, offset);
+            }
+            return v;
+        default:
+            throw new UnsupportedOperationException("Cannot differentiate " + call.name);
+        }
+    }
+
+    private static void checkDifferentiable(final Node n) {
+        if (n instanceof Node.ArrayCall || n.shape().length > 0) {
+            throw new UnsupportedOperationException("Cannot differentiate arrays: " + n);
+        }
+        if (n instanceof Node.Binding) {
+            throw new UnsupportedOperationException("Cannot differentiate " + n);
+        }
+        if (n instanceof Node.Call) {
+            switch (((Node.Call) n).name) {
+            case "sin":
+            case "cos":
+            case "tan":
+            case "exp":
+            case "ln":
+            case "sqrt":
+            case "avg":
+            case "min":
+            case "max":
+                return;
+            default:
+                throw new UnsupportedOperationException("Cannot differentiate " + n);
+            }
+        }
+        if (n instanceof Node.LazyCall && !"if".equals(((Node.LazyCall) n).name) && !"coalesce".equals(((Node.LazyCall) n).name)) {
+            throw new UnsupportedOperationException("Cannot differentiate " + n);
+        }
+    }
+
+    /**
+     * The operand and tangent stacks of a thread, a pair for each program being evaluated on it, e.g. the branch of an
+     * if evaluated within the expression, reused from one evaluation to the next
+     */
+    private static class Scratch {
+        double[][] stacks = new double[4][];
+        double[][] tangents = new double[4][];
+        int depth;
+    }
+}
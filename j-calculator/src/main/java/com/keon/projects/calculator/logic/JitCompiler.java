@@ -0,0 +1,344 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.keon.projects.jassist.CtClassTemplate;
+
+import javassist.CannotCompileException;
+
+/**
+ * Generates a JVM class evaluating a {@link Program} as straight line code over locals, one per node, so that the
+ * JIT can inline the arithmetic. Equal programs share a class, since classes are never unloaded, and past
+ * {@link #MAX_CLASSES} programs are left to the interpreter.
+ */
+class JitCompiler {
+
+    /**
+     * HotSpot does not compile methods larger than 8000 bytes of bytecode, which is about this many nodes
+     */
+    static final int MAX_NODES = 1000;
+
+    /**
+     * The most classes generated, set by the com.keon.projects.calculator.jitClasses system property
+     */
+    static final int MAX_CLASSES = Integer.getInteger("com.keon.projects.calculator.jitClasses", 4096);
+
+    private static final String PACKAGE = JitCompiler.class.getPackage().getName();
+    private static final String EXTENDED_MATH = ExtendedMath.class.getName();
+    private static final String JIT_COMPILER = JitCompiler.class.getName();
+    private static final String IFUNCTION = Ifunction.class.getName();
+    private static final String PROGRAM = Program.class.getName();
+    private static final String STACK = Program.Stack.class.getName();
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    /**
+     * The functions called by the classes being generated, by class name, until their static fields are initialized
+     */
+    private static final Map<String, Ifunction[]> FUNCTIONS = new ConcurrentHashMap<>();
+    /**
+     * An instance of each class generated, by its code, guarded by the lock of this class
+     */
+    private static final Map<Source, Evaluable> CLASSES = new HashMap<>();
+
+    private final String name;
+    private final CtClassTemplate template;
+    private final StringBuilder body = new StringBuilder();
+    private final List<Ifunction> functions = new ArrayList<>();
+    private int locals;
+    /**
+     * The size of the frame of the operand stack holding the arguments of the calls, the most arguments of a call
+     */
+    private int frame;
+
+    private JitCompiler(final String name) {
+        this.name = name;
+        this.template = new CtClassTemplate(name).addImplements(Evaluable.class.getName());
+    }
+
+    /**
+     * Called by the static initializer of a generated class
+     *
+     * @return the function of the field f{index} of the class
+     */
+    static Ifunction function(final String className, final int index) {
+        return FUNCTIONS.get(className)[index];
+    }
+
+    /**
+     * @return the generated evaluable, or null if the program is too large to benefit from compilation, calls a
+     *         lazy function that cannot be inlined or a binding function, or {@link #MAX_CLASSES} were generated
+     */
+    static Evaluable compile(final Program program) {
+        if (size(program) > MAX_NODES) {
+            return null;
+        }
+        final JitCompiler compiler = new JitCompiler(PACKAGE + ".GeneratedExpression" + COUNTER.getAndIncrement());
+        final String res = compiler.emit(program);
+        if (res == null) {
+            return null;
+        }
+        final String method = compiler.method(res);
+        final Ifunction[] functions = compiler.functions.toArray(new Ifunction[compiler.functions.size()]);
+        final Source source = new Source(method, functions);
+        synchronized (JitCompiler.class) {
+            final Evaluable generated = CLASSES.get(source);
+            if (generated != null || CLASSES.size() >= MAX_CLASSES) {
+                return generated;
+            }
+            compiler.template.addMethod(method);
+            FUNCTIONS.put(compiler.name, functions);
+            try {
+                // initializes the static fields
+                final Evaluable e = (Evaluable) compiler.template.createClass(JitCompiler.class).getDeclaredConstructor().newInstance();
+                CLASSES.put(source, e);
+                return e;
+            } catch (final CannotCompileException | ReflectiveOperationException e) {
+                throw new RuntimeException("Could not compile " + compiler.template, e);
+            } finally {
+                FUNCTIONS.remove(compiler.name);
+            }
+        }
+    }
+
+    /**
+     * @return the count of classes generated so far
+     */
+    static int classCount() {
+        synchronized (JitCompiler.class) {
+            return CLASSES.size();
+        }
+    }
+
+    /**
+     * @return the eval method returning res after the body. The arguments of calls are passed on a frame of the operand
+     *         stack of the current thread, as in {@link Program#eval(double[])}, so that calls do not allocate.
+     */
+    private String method(final String res) {
+        if (frame == 0) {
+            return "public double eval(double[] v) {" + body + "return " + res + ";}";
+        }
+        return "public double eval(double[] v) {" + STACK + " s = " + PROGRAM + ".push(" + frame + ");"
+                + "double[] a = s.values; int b = s.top - " + frame + ";"
+                + "try {" + body + "return " + res + ";} finally { s.top = b; }}";
+    }
+
+    /**
+     * @return the number of nodes of the program, including the arguments of lazy calls
+     */
+    private static int size(final Program program) {
+        int size = 0;
+        for (final Node n : program.code()) {
+            size++;
+            if (n instanceof Node.LazyCall) {
+                for (final Program arg : ((Node.LazyCall) n).programs) {
+                    size += size(arg);
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Appends the statements computing the program to the body
+     *
+     * @return the expression holding the value of the program, or null if it cannot be compiled
+     */
+    private String emit(final Program program) {
+        final Deque<String> stack = new ArrayDeque<>();
+        for (final Node n : program.code()) {
+            if (n instanceof Node.ArrayCall || n.shape().length > 0) {
+                // arrays are left to the interpreter
+                return null;
+            }
+            if (n instanceof Node.Constant) {
+                stack.push(literal(((Node.Constant) n).value));
+                continue;
+            }
+            if (n instanceof Node.Variable) {
+                stack.push("v[" + ((Node.Variable) n).slot + "]");
+                continue;
+            }
+            final String t = "t" + locals++;
+            if (n instanceof Node.Binary) {
+                final String b = stack.pop();
+                final String a = stack.pop();
+                body.append("double ").append(t).append(" = ").append(binary(((Node.Binary) n).op, a, b)).append(';');
+            } else if (n instanceof Node.Call) {
+                final Node.Call call = (Node.Call) n;
+                final String[] args = new String[call.args.length];
+                for (int i = args.length - 1; i >= 0; --i) {
+                    args[i] = stack.pop();
+                }
+                String value = call(call.name, args);
+                if (value == null) {
+                    final String f = "f" + functions.size();
+                    template.addField("private static final " + IFUNCTION + " " + f + " = " + JIT_COMPILER + ".function(\"" + name + "\", "
+                            + functions.size() + ");");
+                    functions.add(call.f);
+                    frame = Math.max(frame, args.length);
+                    for (int i = 0; i < args.length; ++i) {
+                        body.append("a[b + ").append(i).append("] = ").append(args[i]).append(';');
+                    }
+                    value = f + ".applyUnchecked(a, b, " + args.length + ")";
+                }
+                body.append("double ").append(t).append(" = ").append(value).append(';');
+            } else if (n instanceof Node.LazyCall) {
+                if (!lazyCall((Node.LazyCall) n, t)) {
+                    return null;
+                }
+            } else if (n instanceof Node.Binding) {
+                // loops over the body are left to the interpreter
+                return null;
+            } else {
+                throw new UnsupportedOperationException("Cannot compile " + n.getClass().getSimpleName());
+            }
+            stack.push(t);
+        }
+        return stack.pop();
+    }
+
+    /**
+     * Appends the statements computing the lazy call into the local t
+     *
+     * @return false if the function cannot be inlined
+     */
+    private boolean lazyCall(final Node.LazyCall call, final String t) {
+        body.append("double ").append(t).append(" = Double.NaN;");
+        switch (call.name) {
+        case "if":
+            final String condition = emit(call.programs[0]);
+            if (condition == null) {
+                return false;
+            }
+            body.append("if (").append(condition).append(" != 0.0) {");
+            if (!assign(t, call.programs[1])) {
+                return false;
+            }
+            body.append("} else {");
+            if (!assign(t, call.programs[2])) {
+                return false;
+            }
+            body.append('}');
+            return true;
+        case "coalesce":
+            for (final Program arg : call.programs) {
+                body.append("if (Double.isNaN(").append(t).append(")) {");
+                if (!assign(t, arg)) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < call.programs.length; ++i) {
+                body.append('}');
+            }
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private boolean assign(final String t, final Program program) {
+        final String value = emit(program);
+        if (value == null) {
+            return false;
+        }
+        body.append(t).append(" = ").append(value).append(';');
+        return true;
+    }
+
+    private static String binary(final Operator op, final String a, final String b) {
+        switch (op) {
+        case PLUS:
+        case MINUS:
+        case TIMES:
+        case DIVIDE:
+        case MODULO:
+            return a + " " + op.getOp() + " " + b;
+        case LESS:
+        case LESS_EQUAL:
+        case GREATER:
+        case GREATER_EQUAL:
+        case EQUAL:
+        case NOT_EQUAL:
+            return "(" + a + " " + op.getOp() + " " + b + ") ? 1.0 : 0.0";
+        case POWER:
+            return "Math.pow(" + a + ", " + b + ")";
+        case ROOT:
+            return EXTENDED_MATH + ".root(" + a + ", " + b + ")";
+        default:
+            throw new UnsupportedOperationException("Cannot compile operator " + op.getOp());
+        }
+    }
+
+    /**
+     * @return the inlined call, or null if the function is not a built-in
+     */
+    private static String call(final String function, final String[] args) {
+        switch (function) {
+        case "sin":
+        case "cos":
+        case "tan":
+        case "exp":
+        case "sqrt":
+            return "Math." + function + "(" + args[0] + ")";
+        case "ln":
+            return "Math.log(" + args[0] + ")";
+        case "avg":
+            // same order of additions as ExtendedMath.avg
+            final StringBuilder sum = new StringBuilder("0.0");
+            for (final String arg : args) {
+                sum.insert(0, '(').append(" + ").append(arg).append(')');
+            }
+            return sum + " / " + args.length + ".0";
+        case "min":
+        case "max":
+            final StringBuilder res = new StringBuilder(args[0]);
+            for (int i = 1; i < args.length; ++i) {
+                res.insert(0, "Math." + function + "(").append(", ").append(args[i]).append(')');
+            }
+            return res.toString();
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * The eval method of a class and the functions of its fields, which determine the class
+     */
+    private static final class Source {
+
+        private final String method;
+        private final Ifunction[] functions;
+
+        Source(final String method, final Ifunction[] functions) {
+            this.method = method;
+            this.functions = functions;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Source && method.equals(((Source) o).method) && Arrays.equals(functions, ((Source) o).functions);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * method.hashCode() + Arrays.hashCode(functions);
+        }
+    }
+
+    private static String literal(final double value) {
+        if (Double.isNaN(value)) {
+            return "Double.NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+        }
+        return "(" + Double.toString(value) + ")";
+    }
+}
@@ -0,0 +1,51 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Updates a range of independent components of a {@link VariableCalculator} by splitting it in halves, by count of
+ * definitions, until the ranges have at most definitionsPerTask definitions or a single component. Each component
+ * writes the values of its own slots, and only reads those of the components it depends on, which were updated before
+ * the task was forked.
+ */
+class LevelTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final VariableCalculator calculator;
+    private final int[][] components;
+    /**
+     * ends[c] is the count of definitions of the components before c
+     */
+    private final int[] ends;
+    private final int from;
+    private final int to;
+    private final int definitionsPerTask;
+
+    LevelTask(final VariableCalculator calculator, final int[][] components, final int[] ends, final int from, final int to,
+            final int definitionsPerTask) {
+        this.calculator = calculator;
+        this.components = components;
+        this.ends = ends;
+        this.from = from;
+        this.to = to;
+        this.definitionsPerTask = definitionsPerTask;
+    }
+
+    @Override
+    protected void compute() {
+        if (ends[to] - ends[from] <= definitionsPerTask || to - from == 1) {
+            for (int c = from; c < to; ++c) {
+                calculator.update(components[c]);
+            }
+            return;
+        }
+        // splits before the first component that starts at or past half of the definitions of the range
+        final int half = ends[from] + (ends[to] - ends[from]) / 2;
+        int mid = Arrays.binarySearch(ends, from + 1, to, half);
+        mid = Math.min(mid >= 0 ? mid : -mid - 1, to - 1);
+        invokeAll(new LevelTask(calculator, components, ends, from, mid, definitionsPerTask),
+                new LevelTask(calculator, components, ends, mid, to, definitionsPerTask));
+    }
+}
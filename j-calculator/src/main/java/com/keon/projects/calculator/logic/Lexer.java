@@ -0,0 +1,221 @@
+package com.keon.projects.calculator.logic;
+
+/**
+ * A single pass tokenizer that walks the expression by index. Operators are matched by longest match and names
+ * (functions and variables) by exact match against {@link Trie}s, so no substrings are created while tokenizing.
+ * The current token is exposed through the fields of the lexer, which are overwritten by every call to
+ * {@link #next()}.
+ */
+class Lexer {
+
+    enum Token {
+        NUMBER, OPERATOR, FUNCTION, VARIABLE, OPEN, CLOSE, OPEN_ARRAY, CLOSE_ARRAY, COMMA, END
+    }
+
+    private static final Trie<Operator> OPERATORS = new Trie<>();
+    private static final double[] POW10 = new double[23];
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    static {
+        for (final String op : Operator.getOps()) {
+            OPERATORS.put(op, Operator.of(op));
+        }
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; ++i) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final CharSequence s;
+    private final FunctionTable functions;
+    private int pos;
+
+    /**
+     * The variables names are resolved against, which may change between tokens, e.g. for the body of integrate
+     */
+    SymbolTable vars;
+
+    // current token
+    Token token;
+    int start;
+    double number;
+    Operator operator;
+    String symbol;
+    int slot;
+
+    /**
+     * @param s         the expression
+     * @param vars      the variables
+     * @param functions the functions
+     */
+    Lexer(final CharSequence s, final SymbolTable vars, final FunctionTable functions) {
+        this.s = s;
+        this.vars = vars;
+        this.functions = functions;
+    }
+
+    Token next() {
+        while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+            pos++;
+        }
+        start = pos;
+        if (pos == s.length()) {
+            return token = Token.END;
+        }
+        final char c = s.charAt(pos);
+        if (c == '(') {
+            pos++;
+            return token = Token.OPEN;
+        }
+        if (c == ')') {
+            pos++;
+            return token = Token.CLOSE;
+        }
+        if (c == '[') {
+            pos++;
+            return token = Token.OPEN_ARRAY;
+        }
+        if (c == ']') {
+            pos++;
+            return token = Token.CLOSE_ARRAY;
+        }
+        if (c == ',') {
+            pos++;
+            return token = Token.COMMA;
+        }
+        if (isDigit(c)) {
+            return token = lexNumber();
+        }
+        final Trie.Entry<Operator> op = OPERATORS.longestMatch(s, pos);
+        if (op != null) {
+            pos += op.length;
+            operator = op.value;
+            return token = Token.OPERATOR;
+        }
+        if (isNameStart(c)) {
+            return token = lexName();
+        }
+        throw new UnsupportedOperationException("Unrecognized symbol near: " + near(start));
+    }
+
+    /**
+     * Looks ahead, without moving, for an argument of the function call whose '(' was just read
+     *
+     * @return the text of the index-th argument, or null if the call has fewer arguments
+     */
+    String argument(final int index) {
+        int depth = 0;
+        int arg = 0;
+        int from = pos;
+        for (int i = pos; i < s.length(); ++i) {
+            final char c = s.charAt(i);
+            if (c == '(' || c == '[') {
+                depth++;
+            } else if ((c == ')' || c == ']') && depth-- == 0 || c == ',' && depth == 0) {
+                if (arg == index) {
+                    return s.subSequence(from, i).toString().trim();
+                }
+                if (c == ')') {
+                    return null;
+                }
+                arg++;
+                from = i + 1;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the remainder of the expression starting at idx, for error messages
+     */
+    String near(final int idx) {
+        return s.subSequence(idx, s.length()).toString();
+    }
+
+    private Token lexName() {
+        int end = pos + 1;
+        while (end < s.length() && isNamePart(s.charAt(end))) {
+            end++;
+        }
+        final boolean call = end < s.length() && s.charAt(end) == '(';
+        if (call && (symbol = functions.nameOf(s, pos, end)) != null) {
+            pos = end;
+            return Token.FUNCTION;
+        }
+        final int v = vars.slotOf(s, pos, end);
+        if (v != -1) {
+            slot = v;
+            pos = end;
+            return Token.VARIABLE;
+        }
+        if (!call && functions.nameOf(s, pos, end) != null) {
+            throw new MalformedFunctionException("No () provided to " + s.subSequence(pos, end));
+        }
+        throw new UnsupportedOperationException("Unrecognized function or variable near: " + near(pos));
+    }
+
+    private Token lexNumber() {
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean decimal = false;
+        int idx = pos;
+        for (; idx < s.length(); ++idx) {
+            final char c = s.charAt(idx);
+            if (c == '.') {
+                if (decimal) {
+                    throw new RuntimeException("decimal error near " + near(pos));
+                }
+                decimal = true;
+            } else if (isDigit(c)) {
+                if (digits < MAX_EXACT_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (decimal) {
+                        scale--;
+                    }
+                } else if (!decimal) {
+                    scale++;
+                }
+                digits++;
+            } else {
+                break;
+            }
+        }
+        if (idx < s.length() && (s.charAt(idx) == 'e' || s.charAt(idx) == 'E')) {
+            int e = idx + 1;
+            int sign = 1;
+            if (e < s.length() && (s.charAt(e) == '+' || s.charAt(e) == '-')) {
+                sign = s.charAt(e) == '-' ? -1 : 1;
+                e++;
+            }
+            if (e < s.length() && isDigit(s.charAt(e))) {
+                int exp = 0;
+                for (; e < s.length() && isDigit(s.charAt(e)); ++e) {
+                    exp = Math.min(exp * 10 + (s.charAt(e) - '0'), 100_000);
+                }
+                scale += sign * exp;
+                idx = e;
+            }
+        }
+        if (digits <= MAX_EXACT_DIGITS && scale > -POW10.length && scale < POW10.length) {
+            // both operands are exact doubles, so a single multiplication or division is correctly rounded
+            number = scale < 0 ? mantissa / POW10[-scale] : mantissa * POW10[scale];
+        } else {
+            number = Double.parseDouble(s.subSequence(pos, idx).toString());
+        }
+        pos = idx;
+        return Token.NUMBER;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNameStart(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isNamePart(final char c) {
+        return isNameStart(c) || isDigit(c);
+    }
+}
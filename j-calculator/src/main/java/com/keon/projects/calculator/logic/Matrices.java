@@ -0,0 +1,168 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Arrays;
+
+/**
+ * The vector and matrix functions, over values flattened in row-major order. Products and transposes walk their
+ * operands in cache-sized blocks.
+ */
+final class Matrices {
+
+    static final int[] SCALAR = {};
+
+    /**
+     * The side of the blocks walked at a time: three blocks of 32x32 doubles take 24KB
+     */
+    private static final int BLOCK = 32;
+
+    private Matrices() {
+    }
+
+    /**
+     * @return the count of values of the shape
+     */
+    static int size(final int[] shape) {
+        int size = 1;
+        for (final int dim : shape) {
+            size *= dim;
+        }
+        return size;
+    }
+
+    static String describe(final int[] shape) {
+        return shape.length == 0 ? "scalar" : Arrays.toString(shape);
+    }
+
+    /**
+     * dot(u, v): the sum of the products of the values of two arrays of the same size, whatever their shapes
+     */
+    static final Ifunction.ArrayBody DOT = new Ifunction.ArrayBody() {
+
+        @Override
+        public int[] shape(final int[][] args) {
+            if (size(args[0]) != size(args[1])) {
+                throw new ShapeMismatchException("Cannot take the dot product of " + describe(args[0]) + " and " + describe(args[1]));
+            }
+            return SCALAR;
+        }
+
+        @Override
+        public void apply(final double[] args, final int from, final int[][] shapes, final double[] out, final int to) {
+            out[to] = dot(args, from, args, from + size(shapes[0]), size(shapes[0]));
+        }
+    };
+
+    /**
+     * matmul(a, b): the matrix product. A vector is a row on the left and a column on the right, and the product of
+     * two vectors is their dot product.
+     */
+    static final Ifunction.ArrayBody MATMUL = new Ifunction.ArrayBody() {
+
+        @Override
+        public int[] shape(final int[][] args) {
+            final int[] a = args[0];
+            final int[] b = args[1];
+            if (a.length == 0 || b.length == 0 || a[a.length - 1] != b[0]) {
+                throw new ShapeMismatchException("Cannot multiply " + describe(a) + " by " + describe(b));
+            }
+            if (a.length == 1) {
+                return b.length == 1 ? SCALAR : new int[] { b[1] };
+            }
+            return b.length == 1 ? new int[] { a[0] } : new int[] { a[0], b[1] };
+        }
+
+        @Override
+        public void apply(final double[] args, final int from, final int[][] shapes, final double[] out, final int to) {
+            final int[] a = shapes[0];
+            final int[] b = shapes[1];
+            final int m = a.length == 1 ? 1 : a[0];
+            final int k = b[0];
+            final int n = b.length == 1 ? 1 : b[1];
+            matmul(args, from, args, from + m * k, m, k, n, out, to);
+        }
+    };
+
+    /**
+     * transpose(a): the transpose of a matrix. Scalars and vectors are their own transposes.
+     */
+    static final Ifunction.ArrayBody TRANSPOSE = new Ifunction.ArrayBody() {
+
+        @Override
+        public int[] shape(final int[][] args) {
+            return args[0].length == 2 ? new int[] { args[0][1], args[0][0] } : args[0];
+        }
+
+        @Override
+        public void apply(final double[] args, final int from, final int[][] shapes, final double[] out, final int to) {
+            if (shapes[0].length == 2) {
+                transpose(args, from, shapes[0][0], shapes[0][1], out, to);
+            } else {
+                System.arraycopy(args, from, out, to, size(shapes[0]));
+            }
+        }
+    };
+
+    /**
+     * Sums into four accumulators, which the processor adds in parallel. The sum may then differ from a left to right
+     * sum in the last bits.
+     */
+    static double dot(final double[] a, final int i, final double[] b, final int j, final int n) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int k = 0;
+        for (; k + 3 < n; k += 4) {
+            s0 += a[i + k] * b[j + k];
+            s1 += a[i + k + 1] * b[j + k + 1];
+            s2 += a[i + k + 2] * b[j + k + 2];
+            s3 += a[i + k + 3] * b[j + k + 3];
+        }
+        for (; k < n; ++k) {
+            s0 += a[i + k] * b[j + k];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * out[to..to+m*n) = a[i..i+m*k) * b[j..j+k*n), which may not overlap out. Each block of a row of out is updated by
+     * a block of a row of b times a value of a, in a loop over contiguous values that the JIT vectorizes.
+     */
+    static void matmul(final double[] a, final int i, final double[] b, final int j, final int m, final int k, final int n,
+            final double[] out, final int to) {
+        Arrays.fill(out, to, to + m * n, 0);
+        for (int r0 = 0; r0 < m; r0 += BLOCK) {
+            final int r1 = Math.min(r0 + BLOCK, m);
+            for (int p0 = 0; p0 < k; p0 += BLOCK) {
+                final int p1 = Math.min(p0 + BLOCK, k);
+                for (int c0 = 0; c0 < n; c0 += BLOCK) {
+                    final int c1 = Math.min(c0 + BLOCK, n);
+                    for (int r = r0; r < r1; ++r) {
+                        final int row = to + r * n;
+                        for (int p = p0; p < p1; ++p) {
+                            final double v = a[i + r * k + p];
+                            final int col = j + p * n;
+                            for (int c = c0; c < c1; ++c) {
+                                out[row + c] += v * b[col + c];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * out[to..to+rows*cols) = the transpose of the rows x cols matrix a[i..i+rows*cols), which may not overlap out
+     */
+    static void transpose(final double[] a, final int i, final int rows, final int cols, final double[] out, final int to) {
+        for (int r0 = 0; r0 < rows; r0 += BLOCK) {
+            final int r1 = Math.min(r0 + BLOCK, rows);
+            for (int c0 = 0; c0 < cols; c0 += BLOCK) {
+                final int c1 = Math.min(c0 + BLOCK, cols);
+                for (int r = r0; r < r1; ++r) {
+                    for (int c = c0; c < c1; ++c) {
+                        out[to + c * rows + r] = a[i + r * cols + c];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Arrays;
+
+/**
+ * Caches the values of a pure function by its arguments. The cache is direct mapped: each tuple of arguments hashes to
+ * a single entry, which the value for another tuple replaces, so a lookup is a hash and a comparison of primitive
+ * doubles. Entries are immutable and written without locking, so threads share the cache and at worst recompute a
+ * value that another thread stored at the same time.
+ */
+class Memo implements Ifunction.Body {
+
+    private final Ifunction.Body f;
+    private final Entry[] entries;
+
+    /**
+     * @param size the count of entries, rounded up to a power of 2
+     */
+    Memo(final Ifunction.Body f, final int size) {
+        this.f = f;
+        this.entries = new Entry[size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1];
+    }
+
+    @Override
+    public double apply(final double[] args, final int from, final int count) {
+        long h = count;
+        for (int i = from; i < from + count; ++i) {
+            h = h * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(args[i]);
+        }
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 32;
+        final int index = (int) h & (entries.length - 1);
+        final Entry e = entries[index];
+        if (e != null && e.matches(args, from, count)) {
+            return e.value;
+        }
+        final double value = f.apply(args, from, count);
+        entries[index] = new Entry(Arrays.copyOfRange(args, from, from + count), value);
+        return value;
+    }
+
+    int size() {
+        return entries.length;
+    }
+
+    private static class Entry {
+
+        private final double[] args;
+        private final double value;
+
+        Entry(final double[] args, final double value) {
+            this.args = args;
+            this.value = value;
+        }
+
+        /**
+         * Compares the bits of the arguments, so NaN arguments match and 0 does not match -0
+         */
+        boolean matches(final double[] args, final int from, final int count) {
+            if (this.args.length != count) {
+                return false;
+            }
+            for (int i = 0; i < count; ++i) {
+                if (Double.doubleToLongBits(this.args[i]) != Double.doubleToLongBits(args[from + i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
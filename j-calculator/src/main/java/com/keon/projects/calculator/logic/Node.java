@@ -0,0 +1,700 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A node of a parsed expression tree. Nodes are immutable. They are not evaluated recursively, since long
+ * expressions make for very deep trees; instead they are flattened into a {@link Program} where each node executes
+ * against an operand stack once its children have been executed.
+ */
+abstract class Node {
+
+    static final Node[] LEAF = {};
+
+    abstract Node[] children();
+
+    /**
+     * @return the children whose values are on the operand stack when this node executes, i.e. that are evaluated
+     *         before it
+     */
+    Node[] operands() {
+        return children();
+    }
+
+    /**
+     * Executes this node, whose children's values are on top of the operand stack
+     *
+     * @param stack the operand stack
+     * @param sp    the stack pointer, i.e. the index after the top of the stack
+     * @param vars  the variable values, by slot
+     * @return the new stack pointer
+     */
+    abstract int exec(final double[] stack, final int sp, final double[] vars);
+
+    /**
+     * Executes this node for a range of rows at once, whose children's values are on top of the operand stack
+     *
+     * @param stack   the operand stack, each entry holding the values of len rows
+     * @param sp      the stack pointer, i.e. the index after the top of the stack
+     * @param columns the variable values by slot, each holding the values of all rows
+     * @param from    the first row
+     * @param len     the number of rows
+     * @return the new stack pointer
+     */
+    abstract int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len);
+
+    /**
+     * @return the dimensions of the value, see {@link Matrices}. Only the array nodes have values other than scalars.
+     */
+    int[] shape() {
+        return Matrices.SCALAR;
+    }
+
+    /**
+     * @return the count of entries of the operand stack the value takes, in row-major order
+     */
+    int size() {
+        return 1;
+    }
+
+    /**
+     * @return the count of entries of the operand stack this node uses above its operands while executing
+     */
+    int scratch() {
+        return 0;
+    }
+
+    static class Constant extends Node {
+        final double value;
+
+        Constant(final double value) {
+            this.value = value;
+        }
+
+        @Override
+        Node[] children() {
+            return LEAF;
+        }
+
+        @Override
+        int exec(final double[] stack, final int sp, final double[] vars) {
+            stack[sp] = value;
+            return sp + 1;
+        }
+
+        @Override
+        int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len) {
+            Arrays.fill(stack[sp], 0, len, value);
+            return sp + 1;
+        }
+
+        @Override
+        public String toString() {
+            return Double.toString(value);
+        }
+    }
+
+    static class Variable extends Node {
+        final String name;
+        final int slot;
+
+        Variable(final String name, final int slot) {
+            this.name = name;
+            this.slot = slot;
+        }
+
+        @Override
+        Node[] children() {
+            return LEAF;
+        }
+
+        @Override
+        int exec(final double[] stack, final int sp, final double[] vars) {
+            stack[sp] = vars[slot];
+            return sp + 1;
+        }
+
+        @Override
+        int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len) {
+            System.arraycopy(columns[slot], from, stack[sp], 0, len);
+            return sp + 1;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static class Binary extends Node {
+        final Operator op;
+        final Node left;
+        final Node right;
+
+        Binary(final Operator op, final Node left, final Node right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Node[] children() {
+            return new Node[] { left, right };
+        }
+
+        @Override
+        int exec(final double[] stack, final int sp, final double[] vars) {
+            stack[sp - 2] = op.apply(stack[sp - 2], stack[sp - 1]);
+            return sp - 1;
+        }
+
+        @Override
+        int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len) {
+            op.apply(stack[sp - 2], stack[sp - 1], len);
+            return sp - 1;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + op.getOp() + right + ")";
+        }
+    }
+
+    static class Call extends Node {
+        final String name;
+        final Ifunction f;
+        final Node[] args;
+
+        Call(final String name, final Ifunction f, final Node[] args) {
+            this.name = name;
+            this.f = f;
+            this.args = args;
+        }
+
+        @Override
+        Node[] children() {
+            return args;
+        }
+
+        @Override
+        int exec(final double[] stack, final int sp, final double[] vars) {
+            final int base = sp - args.length;
+            stack[base] = f.applyUnchecked(stack, base, args.length);
+            return base + 1;
+        }
+
+        @Override
+        int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len) {
+            final int base = sp - args.length;
+            final double[] res = stack[base];
+            final DoubleUnaryOperator unary = f.unary();
+            if (unary != null) {
+                for (int i = 0; i < len; ++i) {
+                    res[i] = unary.applyAsDouble(res[i]);
+                }
+                return base + 1;
+            }
+            final double[] values = new double[args.length];
+            for (int i = 0; i < len; ++i) {
+                for (int k = 0; k < values.length; ++k) {
+                    values[k] = stack[base + k][i];
+                }
+                res[i] = f.applyUnchecked(values);
+            }
+            return base + 1;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder(name).append('(');
+            for (int i = 0; i < args.length; ++i) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(args[i]);
+            }
+            return builder.append(')').toString();
+        }
+    }
+
+    /**
+     * A call to a lazy function. Its arguments are not evaluated before the call, but compiled into programs of their
+     * own that the function evaluates as needed.
+     */
+    static class LazyCall extends Node {
+        final String name;
+        final Ifunction f;
+        final Node[] args;
+        final Program[] programs;
+
+        LazyCall(final String name, final Ifunction f, final Node[] args) {
+            this.name = name;
+            this.f = f;
+            this.args = args;
+            this.programs = new Program[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                programs[i] = Program.of(args[i]);
+            }
+        }
+
+        @Override
+        Node[] children() {
+            return args;
+        }
+
+        @Override
+        Node[] operands() {
+            return LEAF;
+        }
+
+        @Override
+        int exec(final double[] stack, final int sp, final double[] vars) {
+            stack[sp] = f.applyLazy(programs, vars);
+            return sp + 1;
+        }
+
+        /**
+         * Arguments are evaluated a row at a time, since each row may need different ones
+         */
+        @Override
+        int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len) {
+            final double[] row = new double[columns.length];
+            final double[] res = stack[sp];
+            for (int i = 0; i < len; ++i) {
+                for (int k = 0; k < columns.length; ++k) {
+                    row[k] = columns[k][from + i];
+                }
+                res[i] = f.applyLazy(programs, row);
+            }
+            return sp + 1;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder(name).append('(');
+            for (int i = 0; i < args.length; ++i) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(args[i]);
+            }
+            return builder.append(')').toString();
+        }
+    }
+
+    /**
+     * A call to a binding function, e.g. integrate(x^2, x, 0, 1). The arguments other than the variable and the body
+     * are evaluated before the call, while the body is compiled into a program of its own over the enclosing
+     * variables and the bound one, which is in the slot after them.
+     */
+    static class Binding extends Node {
+        final String name;
+        final Ifunction f;
+        final String variable;
+        final int slot;
+        final Node body;
+        final Node[] args;
+        final Program program;
+
+        /**
+         * @param args the arguments other than the variable and the body, in order
+         */
+        Binding(final String name, final Ifunction f, final String variable, final int slot, final Node body, final Node[] args) {
+            this.name = name;
+            this.f = f;
+            this.variable = variable;
+            this.slot = slot;
+            this.body = body;
+            this.args = args;
+            this.program = Program.of(body);
+        }
+
+        @Override
+        Node[] children() {
+            final Node[] children = Arrays.copyOf(args, args.length + 1);
+            children[args.length] = body;
+            return children;
+        }
+
+        @Override
+        Node[] operands() {
+            return args;
+        }
+
+        @Override
+        int exec(final double[] stack, final int sp, final double[] vars) {
+            final int base = sp - args.length;
+            stack[base] = f.applyBinding(program, vars, slot, stack, base, args.length);
+            return base + 1;
+        }
+
+        @Override
+        int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len) {
+            final int base = sp - args.length;
+            final double[] row = new double[columns.length];
+            final double[] values = new double[args.length];
+            final double[] res = stack[base];
+            for (int i = 0; i < len; ++i) {
+                for (int k = 0; k < columns.length; ++k) {
+                    row[k] = columns[k][from + i];
+                }
+                for (int k = 0; k < values.length; ++k) {
+                    values[k] = stack[base + k][i];
+                }
+                res[i] = f.applyBinding(program, row, slot, values, 0, values.length);
+            }
+            return base + 1;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder(name).append('(');
+            int next = 0;
+            for (int i = 0; i <= args.length + 1; ++i) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(i == f.variableArg() ? variable : i == f.bodyArg() ? body : args[next++]);
+            }
+            return builder.append(')').toString();
+        }
+    }
+
+    /**
+     * A vector or matrix variable, whose values take the slots from slot on
+     */
+    static class ArrayVariable extends Node {
+        final String name;
+        final int slot;
+        final int[] shape;
+        private final int size;
+
+        ArrayVariable(final String name, final int slot, final int[] shape) {
+            this.name = name;
+            this.slot = slot;
+            this.shape = shape;
+            this.size = Matrices.size(shape);
+        }
+
+        @Override
+        Node[] children() {
+            return LEAF;
+        }
+
+        @Override
+        int[] shape() {
+            return shape;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int exec(final double[] stack, final int sp, final double[] vars) {
+            System.arraycopy(vars, slot, stack, sp, size);
+            return sp + size;
+        }
+
+        @Override
+        int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len) {
+            for (int k = 0; k < size; ++k) {
+                System.arraycopy(columns[slot + k], from, stack[sp + k], 0, len);
+            }
+            return sp + size;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * A vector [a, b, ...] of scalars, or a matrix [[a, b], [c, d], ...] of vectors of the same length. The values of
+     * its elements are already in row-major order on the operand stack, so it executes nothing.
+     */
+    static class ArrayLiteral extends Node {
+        final Node[] elements;
+        private final int[] shape;
+        private final int size;
+
+        ArrayLiteral(final Node[] elements) {
+            this.elements = elements;
+            final int[] row = elements[0].shape();
+            if (row.length > 1) {
+                throw new ShapeMismatchException("The rows of a matrix are vectors, not " + Matrices.describe(row));
+            }
+            for (final Node element : elements) {
+                if (!Arrays.equals(element.shape(), row)) {
+                    throw new ShapeMismatchException(
+                            "Rows of different shapes " + Matrices.describe(row) + " and " + Matrices.describe(element.shape()));
+                }
+            }
+            this.shape = row.length == 0 ? new int[] { elements.length } : new int[] { elements.length, row[0] };
+            this.size = Matrices.size(shape);
+        }
+
+        @Override
+        Node[] children() {
+            return elements;
+        }
+
+        @Override
+        int[] shape() {
+            return shape;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int exec(final double[] stack, final int sp, final double[] vars) {
+            return sp;
+        }
+
+        @Override
+        int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len) {
+            return sp;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder().append('[');
+            for (int i = 0; i < elements.length; ++i) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(elements[i]);
+            }
+            return builder.append(']').toString();
+        }
+    }
+
+    /**
+     * A binary operator applied to each pair of values of two arrays of the same shape, or to each value of an array
+     * and a scalar
+     */
+    static class Elementwise extends Node {
+        final Operator op;
+        final Node left;
+        final Node right;
+        private final int[] shape;
+        private final int size;
+        private final int leftSize;
+        private final int rightSize;
+
+        Elementwise(final Operator op, final Node left, final Node right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            final int[] l = left.shape();
+            final int[] r = right.shape();
+            if (l.length > 0 && r.length > 0 && !Arrays.equals(l, r)) {
+                throw new ShapeMismatchException("Cannot apply " + op.getOp() + " to " + Matrices.describe(l) + " and " + Matrices.describe(r));
+            }
+            this.shape = l.length == 0 ? r : l;
+            this.size = Matrices.size(shape);
+            this.leftSize = left.size();
+            this.rightSize = right.size();
+        }
+
+        @Override
+        Node[] children() {
+            return new Node[] { left, right };
+        }
+
+        @Override
+        int[] shape() {
+            return shape;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int exec(final double[] stack, final int sp, final double[] vars) {
+            final int base = sp - leftSize - rightSize;
+            if (leftSize == rightSize) {
+                for (int k = base; k < base + size; ++k) {
+                    stack[k] = op.apply(stack[k], stack[k + size]);
+                }
+            } else if (rightSize == 1) {
+                final double y = stack[base + size];
+                for (int k = base; k < base + size; ++k) {
+                    stack[k] = op.apply(stack[k], y);
+                }
+            } else {
+                final double x = stack[base];
+                for (int k = base; k < base + size; ++k) {
+                    stack[k] = op.apply(x, stack[k + 1]);
+                }
+            }
+            return base + size;
+        }
+
+        @Override
+        int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len) {
+            final int base = sp - leftSize - rightSize;
+            if (leftSize == rightSize) {
+                for (int k = base; k < base + size; ++k) {
+                    op.apply(stack[k], stack[k + size], len);
+                }
+            } else if (rightSize == 1) {
+                for (int k = base; k < base + size; ++k) {
+                    op.apply(stack[k], stack[base + size], len);
+                }
+            } else {
+                // the values are computed in the rows of the right operand, which then move down in place of the left
+                final double[] x = stack[base];
+                for (int k = base + 1; k <= base + size; ++k) {
+                    final double[] y = stack[k];
+                    for (int i = 0; i < len; ++i) {
+                        y[i] = op.apply(x[i], y[i]);
+                    }
+                }
+                System.arraycopy(stack, base + 1, stack, base, size);
+                stack[base + size] = x;
+            }
+            return base + size;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + op.getOp() + right + ")";
+        }
+    }
+
+    /**
+     * A call to an array function, or of another function with array arguments, see {@link Ifunction}. An array
+     * function computes its value above its arguments on the operand stack, then moves it down in their place.
+     */
+    static class ArrayCall extends Node {
+        private static final int ARRAY = 0;
+        private static final int EACH = 1;
+        private static final int ALL = 2;
+
+        final String name;
+        final Ifunction f;
+        final Node[] args;
+        private final int[][] shapes;
+        private final int width;
+        private final int kind;
+        private final int[] shape;
+        private final int size;
+
+        ArrayCall(final String name, final Ifunction f, final Node[] args) {
+            this.name = name;
+            this.f = f;
+            this.args = args;
+            this.shapes = new int[args.length][];
+            int width = 0;
+            for (int k = 0; k < args.length; ++k) {
+                shapes[k] = args[k].shape();
+                width += args[k].size();
+            }
+            this.width = width;
+            if (f.isArray()) {
+                kind = ARRAY;
+                shape = f.shape(shapes);
+            } else if (f.isLazy() || f.isBinding()) {
+                throw new ShapeMismatchException("'" + name + "' does not take arrays");
+            } else if (f.isVararg()) {
+                f.checkArgCount(width);
+                kind = ALL;
+                shape = Matrices.SCALAR;
+            } else if (args.length == 1) {
+                kind = EACH;
+                shape = shapes[0];
+            } else {
+                throw new ShapeMismatchException("'" + name + "' takes scalars, unless it takes a single argument or any number of them");
+            }
+            this.size = Matrices.size(shape);
+        }
+
+        @Override
+        Node[] children() {
+            return args;
+        }
+
+        @Override
+        int[] shape() {
+            return shape;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int scratch() {
+            return kind == ARRAY ? size : 0;
+        }
+
+        @Override
+        int exec(final double[] stack, final int sp, final double[] vars) {
+            final int base = sp - width;
+            if (kind == ARRAY) {
+                f.applyArray(stack, base, shapes, stack, sp);
+                System.arraycopy(stack, sp, stack, base, size);
+            } else if (kind == EACH) {
+                final DoubleUnaryOperator unary = f.unary();
+                for (int k = base; k < sp; ++k) {
+                    stack[k] = unary != null ? unary.applyAsDouble(stack[k]) : f.applyUnchecked(stack, k, 1);
+                }
+            } else {
+                stack[base] = f.applyUnchecked(stack, base, width);
+            }
+            return base + size;
+        }
+
+        @Override
+        int exec(final double[][] stack, final int sp, final double[][] columns, final int from, final int len) {
+            final int base = sp - width;
+            if (kind == EACH) {
+                final DoubleUnaryOperator unary = f.unary();
+                for (int k = base; k < sp; ++k) {
+                    final double[] values = stack[k];
+                    for (int i = 0; i < len; ++i) {
+                        values[i] = unary != null ? unary.applyAsDouble(values[i]) : f.applyUnchecked(values, i, 1);
+                    }
+                }
+                return sp;
+            }
+            final double[] values = new double[width + (kind == ARRAY ? size : 0)];
+            for (int i = 0; i < len; ++i) {
+                for (int k = 0; k < width; ++k) {
+                    values[k] = stack[base + k][i];
+                }
+                if (kind == ARRAY) {
+                    f.applyArray(values, 0, shapes, values, width);
+                    for (int k = 0; k < size; ++k) {
+                        stack[base + k][i] = values[width + k];
+                    }
+                } else {
+                    stack[base][i] = f.applyUnchecked(values, 0, width);
+                }
+            }
+            return base + size;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder(name).append('(');
+            for (int i = 0; i < args.length; ++i) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(args[i]);
+            }
+            return builder.append(')').toString();
+        }
+    }
+}
@@ -1,91 +1,164 @@
 package com.keon.projects.calculator.logic;
 
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-class Operator implements Comparator<Operator> {
-
-    public static final String PLUS = "+";
-    public static final String MINUS = "-";
-
-    private static final Map<String, Function> F_MAP = new HashMap<>();
-    private static final Map<String, OperatorClass> C_MAP = new HashMap<>();
+/**
+ * The binary operators. Operators are applied by switching on the constant, so that applying one is a jump and a
+ * primitive operation rather than a map lookup and a call through an interface. Comparisons bind loosest and
+ * evaluate to 1 when they hold and 0 otherwise.
+ */
+enum Operator {
+
+    LESS("<", -1, true),
+    LESS_EQUAL("<=", -1, true),
+    GREATER(">", -1, true),
+    GREATER_EQUAL(">=", -1, true),
+    EQUAL("==", -1, true),
+    NOT_EQUAL("!=", -1, true),
+    PLUS("+", 0, true),
+    MINUS("-", 0, true),
+    TIMES("*", 1, true),
+    DIVIDE("/", 1, true),
+    MODULO("%", 1, true),
+    POWER("^", 2, false),
+    ROOT("/^", 2, false);
+
+    private static final Map<String, Operator> OPERATORS;
 
     static {
-        F_MAP.put(PLUS, (a, b) -> a + b);
-        F_MAP.put(MINUS, (a, b) -> a - b);
-        F_MAP.put("*", (a, b) -> a * b);
-        F_MAP.put("/", (a, b) -> a / b);
-        F_MAP.put("^", Math::pow);
-        F_MAP.put("/^", ExtendedMath::root);
-        F_MAP.put("%", (a, b) -> a % b);
-        C_MAP.put(PLUS, new OperatorClass(0, true));
-        C_MAP.put(MINUS, new OperatorClass(0, true));
-        C_MAP.put("*", new OperatorClass(1, true));
-        C_MAP.put("/", new OperatorClass(1, true));
-        C_MAP.put("^", new OperatorClass(2, false));
-        C_MAP.put("/^", new OperatorClass(2, false));
-        C_MAP.put("%", new OperatorClass(1, true));
+        final Map<String, Operator> operators = new HashMap<>();
+        for (final Operator op : values()) {
+            operators.put(op.op, op);
+        }
+        OPERATORS = Collections.unmodifiableMap(operators);
     }
 
     private final String op;
+    private final int priority;
+    private final boolean leftEvaluate;
 
-    public Operator(final String op) {
-        if (F_MAP.get(op) == null) {
-            throw new RuntimeException("Bad op: " + op);
-        }
+    Operator(final String op, final int priority, final boolean leftEvaluate) {
         this.op = op;
+        this.priority = priority;
+        this.leftEvaluate = leftEvaluate; // true means that a op b op c -> (a op b) op c ; else a op (b op c)
     }
 
-    public boolean isSuperiorTo(final Operator other) {
-        return compare(this, other) > 0;
+    /**
+     * @return the operator written op
+     */
+    static Operator of(final String op) {
+        final Operator operator = OPERATORS.get(op);
+        if (operator == null) {
+            throw new RuntimeException("Bad op: " + op);
+        }
+        return operator;
     }
 
     public String getOp() {
         return op;
     }
 
-    public boolean isInSameClassAs(final Operator other) {
-        return compare(this, other) == 0;
+    /**
+     * @return the binding strength of the operator; higher binds tighter
+     */
+    public int priority() {
+        return priority;
     }
 
-    public double apply(final double x, final double y) {
-        return F_MAP.get(op).apply(x, y);
-    }
-
-    private static interface Function {
-
-        double apply(double x, double y);
+    /**
+     * @return true if a op b op c is (a op b) op c; false if it is a op (b op c)
+     */
+    public boolean isLeftAssociative() {
+        return leftEvaluate;
     }
 
-    public static String[] getOps() {
-        String[] ops = new String[F_MAP.size()];
-        int i = 0;
-        for (final String op : F_MAP.keySet()) {
-            ops[i] = op;
-            i++;
+    public double apply(final double x, final double y) {
+        switch (this) {
+        case LESS:
+            return x < y ? 1 : 0;
+        case LESS_EQUAL:
+            return x <= y ? 1 : 0;
+        case GREATER:
+            return x > y ? 1 : 0;
+        case GREATER_EQUAL:
+            return x >= y ? 1 : 0;
+        case EQUAL:
+            return x == y ? 1 : 0;
+        case NOT_EQUAL:
+            return x != y ? 1 : 0;
+        case PLUS:
+            return x + y;
+        case MINUS:
+            return x - y;
+        case TIMES:
+            return x * y;
+        case DIVIDE:
+            return x / y;
+        case MODULO:
+            return x % y;
+        case POWER:
+            return Math.pow(x, y);
+        case ROOT:
+            return ExtendedMath.root(x, y);
+        default:
+            throw new AssertionError(this);
         }
-        return ops;
-    }
-
-    @Override
-    public int compare(Operator o1, Operator o2) {
-        return C_MAP.get(o1.op).compare(C_MAP.get(o2.op));
     }
 
-    private static class OperatorClass {
-        final int priority;
-        final boolean leftEvaluate;
-
-        OperatorClass(final int priority, final boolean leftEvaluate) {
-            this.priority = priority;
-            this.leftEvaluate = leftEvaluate; // true means that a op b op c -> (a op b) op c ; else a op (b op c)
+    /**
+     * Applies the operator element-wise: x[i] = x[i] op y[i] for i < len
+     */
+    void apply(final double[] x, final double[] y, final int len) {
+        switch (this) {
+        case PLUS:
+            for (int i = 0; i < len; ++i) {
+                x[i] += y[i];
+            }
+            break;
+        case MINUS:
+            for (int i = 0; i < len; ++i) {
+                x[i] -= y[i];
+            }
+            break;
+        case TIMES:
+            for (int i = 0; i < len; ++i) {
+                x[i] *= y[i];
+            }
+            break;
+        case DIVIDE:
+            for (int i = 0; i < len; ++i) {
+                x[i] /= y[i];
+            }
+            break;
+        case MODULO:
+            for (int i = 0; i < len; ++i) {
+                x[i] %= y[i];
+            }
+            break;
+        case POWER:
+            for (int i = 0; i < len; ++i) {
+                x[i] = Math.pow(x[i], y[i]);
+            }
+            break;
+        case ROOT:
+            for (int i = 0; i < len; ++i) {
+                x[i] = ExtendedMath.root(x[i], y[i]);
+            }
+            break;
+        default:
+            for (int i = 0; i < len; ++i) {
+                x[i] = apply(x[i], y[i]);
+            }
         }
+    }
 
-        public int compare(final OperatorClass other) {
-            return priority == other.priority ? (leftEvaluate ? 0 : 1) : (priority > other.priority ? 1 : -1);
+    public static String[] getOps() {
+        final String[] ops = new String[values().length];
+        for (final Operator op : values()) {
+            ops[op.ordinal()] = op.op;
         }
-
+        return ops;
     }
 }
@@ -0,0 +1,152 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Rewrites a parsed expression into a cheaper equivalent one: folds constant subtrees, removes identities such as x*1,
+ * strength reduces x^2 to x*x and orders the operands of + and *. Calls of impure functions are kept, in order.
+ */
+class Optimizer {
+
+    private static final Ifunction IF = Function.get("if");
+
+    private Optimizer() {
+    }
+
+    /**
+     * Rewrites the tree bottom up, without recursion so that the depth of the tree is not limited by the call stack
+     */
+    static Node optimize(final Node root) {
+        final Deque<Node> rewritten = new ArrayDeque<>();
+        // whether each rewritten subtree calls only pure functions
+        final Deque<Boolean> pure = new ArrayDeque<>();
+        for (final Node n : Program.postorder(root)) {
+            final Node[] children = new Node[n.children().length];
+            boolean pureChildren = true;
+            for (int k = children.length - 1; k >= 0; --k) {
+                children[k] = rewritten.pop();
+                pureChildren &= pure.pop();
+            }
+            rewritten.push(rewrite(n, children, pureChildren));
+            pure.push(pureChildren && !isImpureCall(n));
+        }
+        return rewritten.pop();
+    }
+
+    private static boolean isImpureCall(final Node n) {
+        if (n instanceof Node.Call) {
+            return !((Node.Call) n).f.isPure();
+        }
+        if (n instanceof Node.LazyCall) {
+            return !((Node.LazyCall) n).f.isPure();
+        }
+        if (n instanceof Node.Binding) {
+            return !((Node.Binding) n).f.isPure();
+        }
+        if (n instanceof Node.ArrayCall) {
+            return !((Node.ArrayCall) n).f.isPure();
+        }
+        return false;
+    }
+
+    /**
+     * @param n            the node to rewrite
+     * @param children     the already rewritten children of the node
+     * @param pureChildren whether the children call only pure functions
+     */
+    private static Node rewrite(final Node n, final Node[] children, final boolean pureChildren) {
+        if (n instanceof Node.Binary) {
+            return rewrite(((Node.Binary) n).op, children[0], children[1], pureChildren);
+        }
+        if (n instanceof Node.Call) {
+            final Node.Call call = (Node.Call) n;
+            if (!call.f.isPure()) {
+                return new Node.Call(call.name, call.f, children);
+            }
+            final double[] args = new double[children.length];
+            for (int k = 0; k < children.length; ++k) {
+                if (!(children[k] instanceof Node.Constant)) {
+                    return new Node.Call(call.name, call.f, children);
+                }
+                args[k] = ((Node.Constant) children[k]).value;
+            }
+            return new Node.Constant(call.f.applyUnchecked(args));
+        }
+        if (n instanceof Node.Binding) {
+            final Node.Binding binding = (Node.Binding) n;
+            return new Node.Binding(binding.name, binding.f, binding.variable, binding.slot, children[children.length - 1],
+                    Arrays.copyOf(children, children.length - 1));
+        }
+        if (n instanceof Node.LazyCall) {
+            final Node.LazyCall call = (Node.LazyCall) n;
+            if (call.f == IF && children[0] instanceof Node.Constant) {
+                return ((Node.Constant) children[0]).value != 0 ? children[1] : children[2];
+            }
+            final Node.LazyCall rewritten = new Node.LazyCall(call.name, call.f, children);
+            if (!call.f.isPure()) {
+                return rewritten;
+            }
+            for (final Node child : children) {
+                if (!(child instanceof Node.Constant)) {
+                    return rewritten;
+                }
+            }
+            return new Node.Constant(call.f.applyLazy(rewritten.programs, CompiledExpression.NO_VARS));
+        }
+        if (n instanceof Node.Elementwise) {
+            return new Node.Elementwise(((Node.Elementwise) n).op, children[0], children[1]);
+        }
+        if (n instanceof Node.ArrayCall) {
+            return new Node.ArrayCall(((Node.ArrayCall) n).name, ((Node.ArrayCall) n).f, children);
+        }
+        if (n instanceof Node.ArrayLiteral) {
+            return new Node.ArrayLiteral(children);
+        }
+        return n;
+    }
+
+    private static Node rewrite(final Operator op, Node left, Node right, final boolean pure) {
+        if (left instanceof Node.Constant && right instanceof Node.Constant) {
+            return new Node.Constant(op.apply(((Node.Constant) left).value, ((Node.Constant) right).value));
+        }
+        if ((op == Operator.PLUS || op == Operator.TIMES) && pure && rank(left) > rank(right)) {
+            final Node swap = left;
+            left = right;
+            right = swap;
+        }
+        if (!(right instanceof Node.Constant)) {
+            return new Node.Binary(op, left, right);
+        }
+        final double c = ((Node.Constant) right).value;
+        if ((op == Operator.PLUS || op == Operator.MINUS) && c == 0) {
+            return left;
+        }
+        if ((op == Operator.TIMES || op == Operator.DIVIDE || op == Operator.POWER) && c == 1) {
+            return left;
+        }
+        if (op == Operator.POWER) {
+            if (c == 0 && pure) {
+                return new Node.Constant(1);
+            }
+            if (c == 2 && left instanceof Node.Variable) {
+                return new Node.Binary(Operator.TIMES, left, left);
+            }
+        }
+        return new Node.Binary(op, left, right);
+    }
+
+    /**
+     * The canonical order of commutative operands: other subtrees first, then variables by slot, then constants
+     */
+    private static int rank(final Node n) {
+        if (n instanceof Node.Constant) {
+            return Integer.MAX_VALUE;
+        }
+        if (n instanceof Node.Variable) {
+            return ((Node.Variable) n).slot;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,57 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * How a {@link VariableCalculator} evaluates the independent definitions of each level of its dependency graph
+ * concurrently. The functions the definitions call must be thread safe.
+ */
+public final class Parallelism {
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final int definitionsPerTask;
+
+    /**
+     * @param pool the pool to run on, whose parallelism determines the number of threads used
+     */
+    public Parallelism(final ForkJoinPool pool) {
+        this(pool, 256, 32);
+    }
+
+    private Parallelism(final ForkJoinPool pool, final int threshold, final int definitionsPerTask) {
+        this.pool = pool;
+        this.threshold = threshold;
+        this.definitionsPerTask = definitionsPerTask;
+    }
+
+    /**
+     * @param threshold the count of definitions of a level below which it is evaluated on the calling thread (256 by
+     *                  default)
+     * @return a parallelism on the same pool with that threshold
+     */
+    public Parallelism withThreshold(final int threshold) {
+        return new Parallelism(pool, threshold, definitionsPerTask);
+    }
+
+    /**
+     * @param definitionsPerTask the count of definitions below which the definitions of a level are no longer split
+     *                           (32 by default). Definitions that depend on each other are never split.
+     * @return a parallelism on the same pool with that count of definitions per task
+     */
+    public Parallelism withDefinitionsPerTask(final int definitionsPerTask) {
+        return new Parallelism(pool, threshold, Math.max(1, definitionsPerTask));
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getDefinitionsPerTask() {
+        return definitionsPerTask;
+    }
+}
@@ -0,0 +1,335 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import com.keon.projects.calculator.logic.Lexer.Token;
+
+/**
+ * An operator precedence parser with explicit stacks, so that the nesting depth of an expression is not limited by
+ * the call stack. A leading sign applies to the following term, e.g. -2^2 is 0-(2^2).
+ */
+class Parser {
+
+    private final SymbolTable vars;
+    private final FunctionTable functions;
+
+    /**
+     * @param vars      the variables the expression may refer to
+     * @param functions the functions the expression may call
+     */
+    Parser(final SymbolTable vars, final FunctionTable functions) {
+        this.vars = vars;
+        this.functions = functions;
+    }
+
+    /**
+     * Parses the expression into a tree
+     *
+     * @param exp
+     * @return
+     */
+    Node parse(final CharSequence exp) {
+        final Lexer lexer = new Lexer(exp, vars, functions);
+        final List<Node> operands = new ArrayList<>();
+        final Deque<Frame> frames = new ArrayDeque<>();
+        lexer.next();
+        boolean expectOperand = true;
+        while (true) {
+            if (expectOperand) {
+                parseOperand(lexer, operands, frames);
+            }
+            // after an operand
+            expectOperand = true;
+            if (lexer.token == Token.OPERATOR) {
+                final Operator op = lexer.operator;
+                while (!frames.isEmpty() && frames.peek().reducedBy(op)) {
+                    reduce(frames.pop(), operands);
+                }
+                frames.push(Frame.binary(op, lexer.start));
+                lexer.next();
+                continue;
+            }
+            while (!frames.isEmpty() && frames.peek().kind != Frame.GROUP && frames.peek().kind != Frame.CALL
+                    && frames.peek().kind != Frame.ARRAY) {
+                reduce(frames.pop(), operands);
+            }
+            final Frame group = frames.peek();
+            if (group == null) {
+                break;
+            }
+            if (group.kind == Frame.CALL && lexer.token == Token.COMMA) {
+                group.arg++;
+                lexer.vars = group.scope();
+                lexer.next();
+                continue;
+            }
+            if (group.kind == Frame.ARRAY && lexer.token == Token.COMMA) {
+                lexer.next();
+                continue;
+            }
+            if (lexer.token != (group.kind == Frame.ARRAY ? Token.CLOSE_ARRAY : Token.CLOSE)) {
+                throw new UnbalancedParanthesisException("Unbalanced paranthesis found near " + lexer.near(group.start));
+            }
+            frames.pop();
+            if (group.kind == Frame.CALL) {
+                call(group, operands, lexer);
+            } else if (group.kind == Frame.ARRAY) {
+                array(group, operands, lexer);
+            }
+            lexer.next();
+            expectOperand = false;
+        }
+        if (lexer.token == Token.CLOSE || lexer.token == Token.CLOSE_ARRAY) {
+            throw new UnbalancedParanthesisException("Unbalanced paranthesis found near " + lexer.near(lexer.start));
+        }
+        if (lexer.token == Token.COMMA) {
+            throw new MalformedFunctionException("Saw , outside of a function or array near " + lexer.near(lexer.start));
+        }
+        if (lexer.token != Token.END) {
+            throw new MisplacedOperatorException("Bad operator placement near: " + lexer.near(lexer.start));
+        }
+        return operands.get(0);
+    }
+
+    /**
+     * Reads the signs, opening parenthesis and function calls that precede an operand, then the operand. Leaves the
+     * lexer on the token after the operand.
+     */
+    private void parseOperand(final Lexer lexer, final List<Node> operands, final Deque<Frame> frames) {
+        while (true) {
+            final int start = lexer.start;
+            switch (lexer.token) {
+            case NUMBER:
+                operands.add(new Node.Constant(lexer.number));
+                lexer.next();
+                return;
+            case VARIABLE:
+                final String name = lexer.vars.name(lexer.slot);
+                final int[] shape = lexer.vars.shape(lexer.slot);
+                operands.add(shape.length == 0 ? new Node.Variable(name, lexer.slot)
+                        : new Node.ArrayVariable(name.substring(0, name.indexOf('[')), lexer.slot, shape));
+                lexer.next();
+                return;
+            case OPERATOR:
+                boolean negative = false;
+                while (lexer.token == Token.OPERATOR) {
+                    if (lexer.operator == Operator.MINUS) {
+                        negative = !negative;
+                    } else if (lexer.operator != Operator.PLUS) {
+                        throw new MisplacedOperatorException("Bad operator placement near: " + lexer.near(start));
+                    }
+                    lexer.next();
+                }
+                frames.push(Frame.sign(negative ? Operator.MINUS : Operator.PLUS, start));
+                break;
+            case OPEN:
+                frames.push(Frame.group(start));
+                lexer.next();
+                break;
+            case OPEN_ARRAY:
+                if (lexer.next() == Token.CLOSE_ARRAY) {
+                    throw new ShapeMismatchException("Empty array near: " + lexer.near(start));
+                }
+                frames.push(Frame.array(start, operands.size()));
+                break;
+            case FUNCTION:
+                final Ifunction f = functions.get(lexer.symbol);
+                lexer.next(); // (
+                SymbolTable inner = null;
+                if (f.isBinding()) {
+                    final String variable = lexer.argument(f.variableArg());
+                    try {
+                        inner = lexer.vars.bind(variable);
+                    } catch (final IllegalArgumentException e) {
+                        throw new MalformedFunctionException("Expected a variable name as argument " + (f.variableArg() + 1) + " of '"
+                                + lexer.symbol + "' near: " + lexer.near(start));
+                    }
+                }
+                final Frame call = Frame.call(lexer.symbol, f, start, operands.size(), lexer.vars, inner);
+                lexer.vars = call.scope();
+                if (lexer.next() == Token.CLOSE) {
+                    call(call, operands, lexer);
+                    lexer.next();
+                    return;
+                }
+                frames.push(call);
+                break;
+            case COMMA:
+                throw new RuntimeException("Saw ,, near " + lexer.near(start));
+            default:
+                throw new MisplacedOperatorException("Missing operand near: " + lexer.near(start));
+            }
+        }
+    }
+
+    private static void reduce(final Frame frame, final List<Node> operands) {
+        final Node right = operands.remove(operands.size() - 1);
+        final Node left = frame.kind == Frame.SIGN ? new Node.Constant(0) : operands.remove(operands.size() - 1);
+        operands.add(left.shape().length == 0 && right.shape().length == 0 ? new Node.Binary(frame.op, left, right)
+                : new Node.Elementwise(frame.op, left, right));
+    }
+
+    /**
+     * Replaces the elements of an array on top of the operands by the array. Expects the lexer to be on the closing
+     * ']'
+     */
+    private static void array(final Frame array, final List<Node> operands, final Lexer lexer) {
+        final List<Node> tail = operands.subList(array.base, operands.size());
+        final Node[] elements = tail.toArray(new Node[tail.size()]);
+        tail.clear();
+        try {
+            operands.add(new Node.ArrayLiteral(elements));
+        } catch (final ShapeMismatchException e) {
+            throw new ShapeMismatchException(e.getMessage() + " near: " + lexer.near(array.start), e);
+        }
+    }
+
+    /**
+     * Replaces the arguments of a function call on top of the operands by the call. Expects the lexer to be on the
+     * closing ')'
+     */
+    private static void call(final Frame call, final List<Node> operands, final Lexer lexer) {
+        final List<Node> tail = operands.subList(call.base, operands.size());
+        final Node[] args = tail.toArray(new Node[tail.size()]);
+        tail.clear();
+        lexer.vars = call.outer;
+        final Ifunction f = call.f;
+        try {
+            f.checkArgCount(args.length);
+        } catch (final ArgumentCountException e) {
+            throw new ArgumentCountException("Incorrect number of args passed into '" + call.name + "' near: " + lexer.near(call.start), e);
+        }
+        if (f.isArray() || hasArray(args)) {
+            try {
+                operands.add(new Node.ArrayCall(call.name, f, args));
+            } catch (final ShapeMismatchException | ArgumentCountException e) {
+                throw new ShapeMismatchException(e.getMessage() + " near: " + lexer.near(call.start), e);
+            }
+        } else if (f.isBinding()) {
+            operands.add(binding(call, args, lexer));
+        } else {
+            operands.add(f.isLazy() ? new Node.LazyCall(call.name, f, args) : new Node.Call(call.name, f, args));
+        }
+    }
+
+    private static boolean hasArray(final Node[] args) {
+        for (final Node arg : args) {
+            if (arg.shape().length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Node binding(final Frame call, final Node[] args, final Lexer lexer) {
+        final Ifunction f = call.f;
+        final int slot = call.outer.size();
+        final Node variable = args[f.variableArg()];
+        if (!(variable instanceof Node.Variable) || ((Node.Variable) variable).slot != slot) {
+            throw new MalformedFunctionException("Expected a variable name as argument " + (f.variableArg() + 1) + " of '" + call.name
+                    + "' near: " + lexer.near(call.start));
+        }
+        final Node[] others = new Node[args.length - 2];
+        int k = 0;
+        for (int i = 0; i < args.length; ++i) {
+            if (i != f.variableArg() && i != f.bodyArg()) {
+                others[k++] = args[i];
+            }
+        }
+        return new Node.Binding(call.name, f, ((Node.Variable) variable).name, slot, args[f.bodyArg()], others);
+    }
+
+    /**
+     * Something that was read, but is waiting for its operands
+     */
+    private static class Frame {
+
+        static final int BINARY = 0;
+        static final int SIGN = 1;
+        static final int GROUP = 2;
+        static final int CALL = 3;
+        static final int ARRAY = 4;
+
+        final int kind;
+        final int start;
+        final Operator op;
+        final String name;
+        final Ifunction f;
+        final int base;
+        final SymbolTable outer;
+        final SymbolTable inner;
+        /**
+         * The index of the argument being parsed
+         */
+        int arg;
+
+        private Frame(final int kind, final int start, final Operator op, final String name, final Ifunction f, final int base,
+                final SymbolTable outer, final SymbolTable inner) {
+            this.kind = kind;
+            this.start = start;
+            this.op = op;
+            this.name = name;
+            this.f = f;
+            this.base = base;
+            this.outer = outer;
+            this.inner = inner;
+        }
+
+        static Frame binary(final Operator op, final int start) {
+            return new Frame(BINARY, start, op, null, null, -1, null, null);
+        }
+
+        /**
+         * A leading sign, applied as 0+term or 0-term
+         */
+        static Frame sign(final Operator op, final int start) {
+            return new Frame(SIGN, start, op, null, null, -1, null, null);
+        }
+
+        static Frame group(final int start) {
+            return new Frame(GROUP, start, null, null, null, -1, null, null);
+        }
+
+        /**
+         * @param base the number of operands before the first element
+         */
+        static Frame array(final int start, final int base) {
+            return new Frame(ARRAY, start, null, null, null, base, null, null);
+        }
+
+        /**
+         * @param base  the number of operands before the first argument
+         * @param outer the variables around the call
+         * @param inner the variables of the body of a binding function, including the bound one; null otherwise
+         */
+        static Frame call(final String name, final Ifunction f, final int start, final int base, final SymbolTable outer,
+                final SymbolTable inner) {
+            return new Frame(CALL, start, null, name, f, base, outer, inner);
+        }
+
+        /**
+         * @return the variables of the argument being parsed
+         */
+        SymbolTable scope() {
+            return inner != null && (arg == f.variableArg() || arg == f.bodyArg()) ? inner : outer;
+        }
+
+        /**
+         * @return true if next binds looser than this frame, i.e. this frame's right operand is complete
+         */
+        boolean reducedBy(final Operator next) {
+            switch (kind) {
+            case BINARY:
+                return op.isLeftAssociative() ? next.priority() <= op.priority() : next.priority() < op.priority();
+            case SIGN:
+                // a sign applies to the following term
+                return next.priority() <= Operator.PLUS.priority();
+            default:
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.keon.projects.calculator.logic;
+
+/**
+ * A {@link Program} evaluated with a count and the time of each execution of each of its nodes, see {@link Profiler}.
+ * The programs its nodes evaluate, i.e. the arguments of lazy calls and the bodies of binding functions, are profiled
+ * too, so a lazy call or a binding is timed including the nodes it evaluates.
+ */
+final class ProfiledProgram implements Evaluable {
+
+    private final Node[] code;
+    private final int maxStack;
+    private final Profiler.NodeStats[] stats;
+    /**
+     * The profiled arguments of each lazy call and the profiled body of each binding, null for other nodes
+     */
+    private final Evaluable[][] nested;
+
+    /**
+     * The statistics of the nodes, referenced here so that they are kept for as long as the program
+     */
+    private final Profiler.ExpressionStats expression;
+
+    ProfiledProgram(final Program program, final Profiler.ExpressionStats expression, final Profiler profiler) {
+        this.expression = expression;
+        this.code = program.code();
+        this.maxStack = program.maxStack();
+        this.stats = new Profiler.NodeStats[code.length];
+        this.nested = new Evaluable[code.length][];
+        for (int i = 0; i < code.length; ++i) {
+            stats[i] = expression.node(code[i], profiler);
+            if (code[i] instanceof Node.LazyCall) {
+                final Program[] args = ((Node.LazyCall) code[i]).programs;
+                nested[i] = new Evaluable[args.length];
+                for (int k = 0; k < args.length; ++k) {
+                    nested[i][k] = new ProfiledProgram(args[k], expression, profiler);
+                }
+            } else if (code[i] instanceof Node.Binding) {
+                nested[i] = new Evaluable[] { new ProfiledProgram(((Node.Binding) code[i]).program, expression, profiler) };
+            }
+        }
+    }
+
+    @Override
+    public double eval(final double[] vars) {
+        final double[] stack = new double[maxStack];
+        int sp = 0;
+        for (int i = 0; i < code.length; ++i) {
+            final Node n = code[i];
+            final long start = System.nanoTime();
+            if (nested[i] == null) {
+                sp = n.exec(stack, sp, vars);
+            } else if (n instanceof Node.LazyCall) {
+                stack[sp++] = ((Node.LazyCall) n).f.applyLazy(nested[i], vars);
+            } else {
+                final Node.Binding binding = (Node.Binding) n;
+                final int base = sp - binding.args.length;
+                stack[base] = binding.f.applyBinding(nested[i][0], vars, binding.slot, stack, base, binding.args.length);
+                sp = base + 1;
+            }
+            stats[i].add(System.nanoTime() - start);
+        }
+        return stack[0];
+    }
+}
@@ -0,0 +1,261 @@
+package com.keon.projects.calculator.logic;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Records the executions and time of the nodes of profiled expressions, the calls of each function, and the time spent
+ * parsing. The nodes of an expression are dropped from the report once the expression is no longer referenced.
+ */
+public final class Profiler implements ProfilerMXBean {
+
+    private static final int HOT_NODES = 20;
+    private static final int NODE_WIDTH = 60;
+
+    private final LongAdder parses = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder evals = new LongAdder();
+    private final LongAdder evalNanos = new LongAdder();
+    private final Map<String, LongAdder> functionCalls = new ConcurrentHashMap<>();
+    /**
+     * The statistics of the profiled expressions still referenced
+     */
+    private final Map<Reference<ExpressionStats>, Boolean> expressions = new ConcurrentHashMap<>();
+    private final ReferenceQueue<ExpressionStats> collected = new ReferenceQueue<>();
+
+    void parsed(final long nanos) {
+        parses.increment();
+        parseNanos.add(nanos);
+    }
+
+    void evaluated(final long nanos) {
+        evals.increment();
+        evalNanos.add(nanos);
+    }
+
+    /**
+     * @return the program profiled into statistics of its own, which the profiler reports for as long as the program
+     *         is referenced
+     */
+    ProfiledProgram profile(final Program program, final String expression) {
+        final ExpressionStats stats = new ExpressionStats(expression);
+        final ProfiledProgram profiled = new ProfiledProgram(program, stats, this);
+        expunge();
+        expressions.put(new WeakReference<>(stats, collected), Boolean.TRUE);
+        return profiled;
+    }
+
+    /**
+     * @return the count of the calls of the function
+     */
+    LongAdder callsOf(final String function) {
+        return functionCalls.computeIfAbsent(function, name -> new LongAdder());
+    }
+
+    private void expunge() {
+        Reference<? extends ExpressionStats> ref;
+        while ((ref = collected.poll()) != null) {
+            expressions.remove(ref);
+        }
+    }
+
+    private List<ExpressionStats> liveExpressions() {
+        expunge();
+        final List<ExpressionStats> live = new ArrayList<>(expressions.size());
+        for (final Reference<ExpressionStats> ref : expressions.keySet()) {
+            final ExpressionStats stats = ref.get();
+            if (stats != null) {
+                live.add(stats);
+            }
+        }
+        return live;
+    }
+
+    @Override
+    public long getParseCount() {
+        return parses.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    @Override
+    public long getEvalCount() {
+        return evals.sum();
+    }
+
+    @Override
+    public long getEvalNanos() {
+        return evalNanos.sum();
+    }
+
+    @Override
+    public Map<String, Long> getFunctionCalls() {
+        final Map<String, Long> calls = new TreeMap<>();
+        for (final Map.Entry<String, LongAdder> function : functionCalls.entrySet()) {
+            calls.put(function.getKey(), function.getValue().sum());
+        }
+        return calls;
+    }
+
+    @Override
+    public int getExpressionCount() {
+        return liveExpressions().size();
+    }
+
+    /**
+     * @return the parse and evaluation times, the nodes that took the most time and the calls of each function
+     */
+    @Override
+    public String getReport() {
+        final StringBuilder report = new StringBuilder();
+        final long parse = getParseNanos();
+        final long eval = getEvalNanos();
+        report.append(String.format(Locale.ROOT, "Parsed %d expressions in %.3f ms, evaluated %d times in %.3f ms (%.1f%% parsing)%n",
+                getParseCount(), parse / 1e6, getEvalCount(), eval / 1e6, parse + eval == 0 ? 0.0 : 100.0 * parse / (parse + eval)));
+
+        final List<NodeStats> hot = new ArrayList<>();
+        for (final ExpressionStats expression : liveExpressions()) {
+            for (final NodeStats stats : expression.nodes) {
+                if (stats.count.sum() > 0) {
+                    hot.add(stats);
+                }
+            }
+        }
+        // sorted on a snapshot, since other threads may be adding to the sums
+        final Map<NodeStats, Long> nanos = new IdentityHashMap<>();
+        for (final NodeStats stats : hot) {
+            nanos.put(stats, stats.nanos.sum());
+        }
+        hot.sort(Comparator.comparing((NodeStats stats) -> nanos.get(stats)).reversed());
+        report.append(String.format(Locale.ROOT, "%nHot nodes:%n%14s %12s %10s  %s%n", "executions", "total ms", "ns/exec", "node [expression]"));
+        for (final NodeStats stats : hot.subList(0, Math.min(HOT_NODES, hot.size()))) {
+            final long count = stats.count.sum();
+            report.append(String.format(Locale.ROOT, "%14d %12.3f %10.1f  %s [%s]%n", count, nanos.get(stats) / 1e6,
+                    count == 0 ? 0.0 : (double) nanos.get(stats) / count, abbreviate(stats.node.toString()), abbreviate(stats.expression)));
+        }
+
+        report.append(String.format(Locale.ROOT, "%nFunction calls:%n"));
+        for (final Map.Entry<String, Long> calls : getFunctionCalls().entrySet()) {
+            report.append(String.format(Locale.ROOT, "%14d  %s%n", calls.getValue(), calls.getKey()));
+        }
+        return report.toString();
+    }
+
+    private static String abbreviate(final String s) {
+        return s.length() <= NODE_WIDTH ? s : s.substring(0, NODE_WIDTH - 3) + "...";
+    }
+
+    /**
+     * Sets every count and time to 0. The expressions profiled so far stay profiled.
+     */
+    @Override
+    public void reset() {
+        parses.reset();
+        parseNanos.reset();
+        evals.reset();
+        evalNanos.reset();
+        for (final LongAdder calls : functionCalls.values()) {
+            calls.reset();
+        }
+        for (final ExpressionStats expression : liveExpressions()) {
+            for (final NodeStats stats : expression.nodes) {
+                stats.count.reset();
+                stats.nanos.reset();
+            }
+        }
+    }
+
+    /**
+     * Registers this profiler with the platform MBean server, as com.keon.projects.calculator:type=Profiler,name=name
+     *
+     * @return the name it is registered as, to unregister it
+     */
+    public ObjectName registerMBean(final String name) throws JMException {
+        final ObjectName objectName = new ObjectName("com.keon.projects.calculator:type=Profiler,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public String toString() {
+        return getReport();
+    }
+
+    /**
+     * The statistics of the nodes of a profiled expression, including those of the programs its nodes evaluate. Only
+     * filled in before the profiler refers to it.
+     */
+    static final class ExpressionStats {
+
+        final String expression;
+        final List<NodeStats> nodes = new ArrayList<>();
+
+        private ExpressionStats(final String expression) {
+            this.expression = expression;
+        }
+
+        NodeStats node(final Node node, final Profiler profiler) {
+            final NodeStats stats = new NodeStats(expression, node, profiler);
+            nodes.add(stats);
+            return stats;
+        }
+    }
+
+    /**
+     * The executions of a node of a profiled expression
+     */
+    static final class NodeStats {
+
+        final String expression;
+        final Node node;
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        /**
+         * The count of calls of the function the node calls, or null
+         */
+        private final LongAdder calls;
+
+        private NodeStats(final String expression, final Node node, final Profiler profiler) {
+            this.expression = expression;
+            this.node = node;
+            final String function;
+            if (node instanceof Node.Call) {
+                function = ((Node.Call) node).name;
+            } else if (node instanceof Node.LazyCall) {
+                function = ((Node.LazyCall) node).name;
+            } else if (node instanceof Node.Binding) {
+                function = ((Node.Binding) node).name;
+            } else if (node instanceof Node.ArrayCall) {
+                function = ((Node.ArrayCall) node).name;
+            } else {
+                function = null;
+            }
+            this.calls = function == null ? null : profiler.callsOf(function);
+        }
+
+        void add(final long nanos) {
+            count.increment();
+            this.nanos.add(nanos);
+            if (calls != null) {
+                calls.increment();
+            }
+        }
+    }
+}
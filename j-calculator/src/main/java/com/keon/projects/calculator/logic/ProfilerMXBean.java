@@ -0,0 +1,34 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Map;
+
+/**
+ * The management interface of a {@link Profiler}, see {@link Profiler#registerMBean(String)}
+ */
+public interface ProfilerMXBean {
+
+    long getParseCount();
+
+    /**
+     * @return the time spent parsing and optimizing expressions
+     */
+    long getParseNanos();
+
+    long getEvalCount();
+
+    long getEvalNanos();
+
+    /**
+     * @return the count of calls of each function called by the profiled expressions
+     */
+    Map<String, Long> getFunctionCalls();
+
+    /**
+     * @return the count of the profiled expressions still referenced, whose nodes are in the report
+     */
+    int getExpressionCount();
+
+    String getReport();
+
+    void reset();
+}
@@ -0,0 +1,192 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * An expression tree flattened into postfix order, evaluated with an explicit operand stack so that the depth of
+ * the tree is not limited by the depth of the call stack.
+ */
+class Program implements Evaluable {
+
+    /**
+     * The number of rows evaluated at a time by {@link #eval(double[][], int, int, double[])}, small enough for the
+     * operand stack to stay in cache
+     */
+    static final int CHUNK = 1024;
+
+    private static final ThreadLocal<Stack> STACKS = ThreadLocal.withInitial(Stack::new);
+
+    private final Node[] code;
+    private final int maxStack;
+
+    private Program(final Node[] code, final int maxStack) {
+        this.code = code;
+        this.maxStack = maxStack;
+    }
+
+    static Program of(final Node root) {
+        final Node[] code = postorder(root, false);
+        int sp = 0;
+        int maxStack = 0;
+        for (final Node n : code) {
+            maxStack = Math.max(maxStack, sp + n.scratch());
+            for (final Node operand : n.operands()) {
+                sp -= operand.size();
+            }
+            sp += n.size();
+            maxStack = Math.max(maxStack, sp);
+        }
+        return new Program(code, maxStack);
+    }
+
+    /**
+     * @return the nodes of the tree with every node after its children, and children in order, without recursion
+     */
+    static Node[] postorder(final Node root) {
+        return postorder(root, true);
+    }
+
+    /**
+     * @param lazy whether to include the arguments of lazy calls, or only the operands evaluated before each node
+     */
+    private static Node[] postorder(final Node root, final boolean lazy) {
+        // pre-order with children pushed left to right, read backwards, is the postfix order
+        final Deque<Node> pending = new ArrayDeque<>();
+        final List<Node> preorder = new ArrayList<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Node n = pending.pop();
+            preorder.add(n);
+            for (final Node child : lazy ? n.children() : n.operands()) {
+                pending.push(child);
+            }
+        }
+        final Node[] postorder = new Node[preorder.size()];
+        for (int k = 0; k < postorder.length; ++k) {
+            postorder[k] = preorder.get(postorder.length - 1 - k);
+        }
+        return postorder;
+    }
+
+    Node[] code() {
+        return code;
+    }
+
+    /**
+     * @return the size of the operand stack needed to evaluate the program
+     */
+    int maxStack() {
+        return maxStack;
+    }
+
+    /**
+     * @return the distinct slots of the variables the program may read
+     */
+    int[] variableSlots() {
+        final BitSet slots = new BitSet();
+        for (final Node n : code) {
+            if (n instanceof Node.Variable) {
+                slots.set(((Node.Variable) n).slot);
+            } else if (n instanceof Node.ArrayVariable) {
+                slots.set(((Node.ArrayVariable) n).slot, ((Node.ArrayVariable) n).slot + n.size());
+            } else if (n instanceof Node.LazyCall) {
+                for (final Program arg : ((Node.LazyCall) n).programs) {
+                    for (final int slot : arg.variableSlots()) {
+                        slots.set(slot);
+                    }
+                }
+            } else if (n instanceof Node.Binding) {
+                for (final int slot : ((Node.Binding) n).program.variableSlots()) {
+                    if (slot != ((Node.Binding) n).slot) {
+                        slots.set(slot);
+                    }
+                }
+            }
+        }
+        return slots.stream().toArray();
+    }
+
+    /**
+     * Evaluates the program on a frame of the operand stack of the current thread, so that evaluation does not
+     * allocate. Frames are pushed and popped, so a function may evaluate another program while it is applied.
+     */
+    @Override
+    public double eval(final double[] vars) {
+        final Stack frames = push(maxStack);
+        final int base = frames.top - maxStack;
+        final double[] stack = frames.values;
+        try {
+            int sp = base;
+            for (final Node n : code) {
+                sp = n.exec(stack, sp, vars);
+            }
+            return stack[base];
+        } finally {
+            frames.top = base;
+        }
+    }
+
+    /**
+     * Evaluates a program whose value is an array, as by {@link #eval(double[])}
+     *
+     * @param out receives the values of the array, in row-major order
+     */
+    void eval(final double[] vars, final double[] out) {
+        final Stack frames = push(maxStack);
+        final int base = frames.top - maxStack;
+        final double[] stack = frames.values;
+        try {
+            int sp = base;
+            for (final Node n : code) {
+                sp = n.exec(stack, sp, vars);
+            }
+            System.arraycopy(stack, base, out, 0, out.length);
+        } finally {
+            frames.top = base;
+        }
+    }
+
+    /**
+     * Evaluates rows [from, to) a chunk of rows at a time, so that each node runs as a tight loop over primitive arrays
+     *
+     * @param columns the variable values by slot, each holding the values of all rows
+     * @param out     the value of the expression for each row
+     */
+    void eval(final double[][] columns, final int from, final int to, final double[] out) {
+        final double[][] stack = new double[maxStack][Math.min(CHUNK, to - from)];
+        for (int row = from; row < to; row += CHUNK) {
+            final int len = Math.min(CHUNK, to - row);
+            int sp = 0;
+            for (final Node n : code) {
+                sp = n.exec(stack, sp, columns, row, len);
+            }
+            System.arraycopy(stack[0], 0, out, row, len);
+        }
+    }
+
+    /**
+     * The operand stack of a thread, holding a frame for each program being evaluated on it
+     */
+    /**
+     * Pushes a frame of size values on the operand stack of the current thread, e.g. for the classes generated by
+     * {@link JitCompiler}. The frame is values[top - size, top), and is popped by setting top back.
+     */
+    static Stack push(final int size) {
+        final Stack frames = STACKS.get();
+        if (frames.top + size > frames.values.length) {
+            frames.values = Arrays.copyOf(frames.values, Math.max(2 * frames.values.length, frames.top + size));
+        }
+        frames.top += size;
+        return frames;
+    }
+
+    static class Stack {
+        double[] values = new double[64];
+        int top;
+    }
+}
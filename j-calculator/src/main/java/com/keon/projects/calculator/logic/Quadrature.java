@@ -0,0 +1,215 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The bodies of integrate(expr, x, a, b[, tolerance]) and sum(i, from, to, expr). Large sums and integrals are split
+ * into halves forked to the pool of the calling thread, or to the common pool if it is not a worker of one.
+ */
+class Quadrature {
+
+    /**
+     * The absolute error integrate aims for when no tolerance is given, set by the
+     * com.keon.projects.calculator.tolerance system property
+     */
+    static final double DEFAULT_TOLERANCE = Double.parseDouble(System.getProperty("com.keon.projects.calculator.tolerance", "1e-10"));
+
+    /**
+     * Terms summed by a single task
+     */
+    static final long TERMS_PER_TASK = 1 << 16;
+
+    /**
+     * The most terms a sum takes: beyond 2^53, consecutive values of the variable are no longer distinct doubles
+     */
+    static final long MAX_TERMS = 1L << 53;
+
+    /**
+     * Intervals are split in parallel tasks up to this depth, and sequentially below
+     */
+    private static final int PARALLEL_DEPTH = 6;
+    private static final int MAX_DEPTH = 50;
+
+    // 15 point Gauss-Kronrod rule on [-1, 1]: the abscissae in decreasing order, the last being 0, with their weights.
+    // The odd abscissae are those of the embedded 7 point Gauss rule.
+    private static final double[] XGK = { 0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+            0.864864423359769072789712788640926, 0.741531185599394439863864773280788, 0.586087235467691130294144845693013,
+            0.405845151377397166906606412076961, 0.207784955007898467600689403773245, 0 };
+    private static final double[] WGK = { 0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+            0.104790010322250183839876322541518, 0.140653259715525918745189590510238, 0.169004726639267902826583426598550,
+            0.190350578064785409913256402421014, 0.204432940075298892414161999234649, 0.209482141084727828012999174891714 };
+    private static final double[] WG = { 0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+            0.381830050505118944950369775488975, 0.417959183673469387755102040816327 };
+
+    private Quadrature() {
+    }
+
+    /**
+     * Adaptive Gauss-Kronrod quadrature: an interval whose 15 and 7 point rules differ by more than its share of the
+     * tolerance is halved, until the interval is 2^-50 of the range.
+     */
+    static double integrate(final Evaluable body, final double[] vars, final int slot, final double[] args, final int from,
+            final int count) {
+        final double a = args[from];
+        final double b = args[from + 1];
+        final double tolerance = count > 2 ? args[from + 2] : DEFAULT_TOLERANCE;
+        if (a == b) {
+            return 0;
+        }
+        return new IntegralTask(body, vars, slot, a, b, tolerance, 0).compute();
+    }
+
+    /**
+     * The sum of the expression for i = from, from+1, ... up to to, with compensated (Neumaier) summation
+     *
+     * @throws IllegalArgumentException if a bound is infinite, or the sum has more than {@link #MAX_TERMS} terms
+     */
+    static double sum(final Evaluable body, final double[] vars, final int slot, final double[] args, final int from,
+            final int count) {
+        final double first = args[from];
+        final double last = args[from + 1];
+        if (Double.isNaN(first) || Double.isNaN(last)) {
+            return Double.NaN;
+        }
+        if (last < first) {
+            return 0;
+        }
+        if (Double.isInfinite(first) || Double.isInfinite(last) || Math.floor(last - first) >= MAX_TERMS) {
+            throw new IllegalArgumentException("Cannot sum from " + first + " to " + last + ": at most " + MAX_TERMS + " terms are summed");
+        }
+        final long terms = (long) Math.floor(last - first) + 1;
+        return new SumTask(body, vars, slot, first, 0, terms).compute();
+    }
+
+    private static double[] environment(final double[] vars, final int slot) {
+        return Arrays.copyOf(vars, slot + 1);
+    }
+
+    private static class SumTask extends RecursiveTask<Double> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Evaluable body;
+        private final double[] vars;
+        private final int slot;
+        private final double first;
+        private final long lo;
+        private final long hi;
+
+        SumTask(final Evaluable body, final double[] vars, final int slot, final double first, final long lo, final long hi) {
+            this.body = body;
+            this.vars = vars;
+            this.slot = slot;
+            this.first = first;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Double compute() {
+            if (hi - lo > TERMS_PER_TASK) {
+                final long mid = lo + (hi - lo) / 2;
+                final SumTask right = new SumTask(body, vars, slot, first, mid, hi);
+                right.fork();
+                final double left = new SumTask(body, vars, slot, first, lo, mid).compute();
+                return left + right.join();
+            }
+            final double[] env = environment(vars, slot);
+            double sum = 0;
+            double compensation = 0;
+            for (long i = lo; i < hi; ++i) {
+                env[slot] = first + i;
+                final double term = body.eval(env);
+                final double t = sum + term;
+                compensation += Math.abs(sum) >= Math.abs(term) ? (sum - t) + term : (term - t) + sum;
+                sum = t;
+            }
+            return sum + compensation;
+        }
+    }
+
+    private static class IntegralTask extends RecursiveTask<Double> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Evaluable body;
+        private final double[] vars;
+        private final int slot;
+        private final double a;
+        private final double b;
+        private final double tolerance;
+        private final int depth;
+
+        IntegralTask(final Evaluable body, final double[] vars, final int slot, final double a, final double b,
+                final double tolerance, final int depth) {
+            this.body = body;
+            this.vars = vars;
+            this.slot = slot;
+            this.a = a;
+            this.b = b;
+            this.tolerance = tolerance;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Double compute() {
+            final double[] env = environment(vars, slot);
+            final double[] estimate = new double[2];
+            kronrod(body, env, slot, a, b, estimate);
+            if (estimate[1] <= tolerance || depth == MAX_DEPTH || Double.isNaN(estimate[1])) {
+                return estimate[0];
+            }
+            final double mid = a + (b - a) / 2;
+            if (depth >= PARALLEL_DEPTH) {
+                return refine(body, env, slot, a, mid, tolerance / 2, depth + 1, estimate)
+                        + refine(body, env, slot, mid, b, tolerance / 2, depth + 1, estimate);
+            }
+            final IntegralTask right = new IntegralTask(body, vars, slot, mid, b, tolerance / 2, depth + 1);
+            right.fork();
+            final double left = new IntegralTask(body, vars, slot, a, mid, tolerance / 2, depth + 1).compute();
+            return left + right.join();
+        }
+    }
+
+    /**
+     * Sequential adaptive quadrature, whose recursion is bounded by {@link #MAX_DEPTH}
+     */
+    private static double refine(final Evaluable body, final double[] env, final int slot, final double a, final double b,
+            final double tolerance, final int depth, final double[] estimate) {
+        kronrod(body, env, slot, a, b, estimate);
+        if (estimate[1] <= tolerance || depth == MAX_DEPTH || Double.isNaN(estimate[1])) {
+            return estimate[0];
+        }
+        final double mid = a + (b - a) / 2;
+        return refine(body, env, slot, a, mid, tolerance / 2, depth + 1, estimate)
+                + refine(body, env, slot, mid, b, tolerance / 2, depth + 1, estimate);
+    }
+
+    /**
+     * Sets estimate to the 15 point Kronrod estimate of the integral over [a, b] and its difference from the 7 point
+     * Gauss estimate
+     */
+    private static void kronrod(final Evaluable body, final double[] env, final int slot, final double a, final double b,
+            final double[] estimate) {
+        final double center = a + (b - a) / 2;
+        final double half = (b - a) / 2;
+        env[slot] = center;
+        final double fc = body.eval(env);
+        double kronrod = fc * WGK[7];
+        double gauss = fc * WG[3];
+        for (int j = 0; j < 7; ++j) {
+            final double dx = half * XGK[j];
+            env[slot] = center - dx;
+            final double f1 = body.eval(env);
+            env[slot] = center + dx;
+            final double f2 = body.eval(env);
+            kronrod += WGK[j] * (f1 + f2);
+            if (j % 2 == 1) {
+                gauss += WG[j / 2] * (f1 + f2);
+            }
+        }
+        estimate[0] = kronrod * half;
+        estimate[1] = Math.abs((kronrod - gauss) * half);
+    }
+}
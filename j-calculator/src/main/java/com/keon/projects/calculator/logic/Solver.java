@@ -0,0 +1,269 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Arrays;
+
+/**
+ * Solves cyclic definitions of a {@link VariableCalculator}, e.g. x = y/2 + 1 ; y = x^2 - 3, by Newton's method, or
+ * Broyden's if a function cannot be differentiated.
+ */
+public final class Solver {
+
+    private static final int MAX_HALVINGS = 30;
+
+    private final double tolerance;
+    private final int maxIterations;
+
+    /**
+     * A solver with a tolerance of 1e-12 and at most 100 iterations
+     */
+    public Solver() {
+        this(1e-12, 100);
+    }
+
+    private Solver(final double tolerance, final int maxIterations) {
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * @param tolerance the largest residual |x - f(x)| accepted, relative to the magnitude of the variables (1e-12 by
+     *                  default)
+     * @return a solver with that tolerance and the iterations of this one
+     */
+    public Solver withTolerance(final double tolerance) {
+        return new Solver(tolerance, maxIterations);
+    }
+
+    /**
+     * @param maxIterations the number of iterations after which a system is deemed not to converge (100 by default)
+     * @return a solver with that count of iterations and the tolerance of this one
+     */
+    public Solver withMaxIterations(final int maxIterations) {
+        return new Solver(tolerance, maxIterations);
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Solves values[s] = definitions[s].eval(values) for the slots s of a cyclic component, in place. If it fails, the
+     * values of the slots are left as they were.
+     *
+     * @throws CyclicEquationsException if the system does not converge
+     */
+    void solve(final int[] slots, final CompiledExpression[] definitions, final String[] names, final double[] values) {
+        final double[] previous = new double[slots.length];
+        for (int i = 0; i < slots.length; ++i) {
+            previous[i] = values[slots[i]];
+        }
+        try {
+            iterate(slots, definitions, names, values);
+        } catch (final RuntimeException e) {
+            put(slots, previous, values);
+            throw e;
+        }
+    }
+
+    private void iterate(final int[] slots, final CompiledExpression[] definitions, final String[] names, final double[] values) {
+        final int m = slots.length;
+        final String[] wrt = new String[m];
+        for (int i = 0; i < m; ++i) {
+            wrt[i] = names[slots[i]];
+        }
+        Gradient[] gradients = new Gradient[m];
+        try {
+            for (int i = 0; i < m; ++i) {
+                gradients[i] = definitions[slots[i]].gradient(wrt);
+            }
+        } catch (final UnsupportedOperationException e) {
+            gradients = null;
+        }
+
+        final double[][] jacobian = new double[m][m];
+        final double[] x = new double[m];
+        final double[] r = new double[m];
+        for (int i = 0; i < m; ++i) {
+            x[i] = values[slots[i]];
+        }
+        if (gradients != null) {
+            residual(slots, gradients, values, x, r, jacobian);
+        } else {
+            residual(slots, definitions, values, x, r);
+            differences(slots, definitions, values, x, r, jacobian);
+        }
+
+        final double[] step = new double[m];
+        final double[] next = new double[m];
+        final double[] nextR = new double[m];
+        for (int iteration = 0; iteration < maxIterations; ++iteration) {
+            if (norm(r) <= tolerance * (1 + norm(x))) {
+                put(slots, x, values);
+                return;
+            }
+            for (int i = 0; i < m; ++i) {
+                step[i] = -r[i];
+            }
+            solveLinear(jacobian, step, wrt);
+            double t = 1;
+            for (int halvings = 0;; ++halvings) {
+                for (int i = 0; i < m; ++i) {
+                    next[i] = x[i] + t * step[i];
+                }
+                if (gradients != null) {
+                    residual(slots, gradients, values, next, nextR, jacobian);
+                } else {
+                    residual(slots, definitions, values, next, nextR);
+                }
+                if (norm(nextR) < norm(r) || halvings == MAX_HALVINGS) {
+                    break;
+                }
+                t /= 2;
+            }
+            if (gradients == null) {
+                broyden(jacobian, r, nextR, step, t);
+            }
+            System.arraycopy(next, 0, x, 0, m);
+            System.arraycopy(nextR, 0, r, 0, m);
+        }
+        if (norm(r) <= tolerance * (1 + norm(x))) {
+            put(slots, x, values);
+            return;
+        }
+        throw new CyclicEquationsException("Could not solve the cyclic equations between " + Arrays.toString(wrt) + " in " + maxIterations
+                + " iterations. Residuals: " + Arrays.toString(r));
+    }
+
+    /**
+     * r = x - f(x), and the Jacobian of r at x
+     */
+    private static void residual(final int[] slots, final Gradient[] gradients, final double[] values, final double[] x,
+            final double[] r, final double[][] jacobian) {
+        put(slots, x, values);
+        for (int i = 0; i < slots.length; ++i) {
+            final double[] row = jacobian[i];
+            r[i] = x[i] - gradients[i].eval(values, row);
+            for (int j = 0; j < row.length; ++j) {
+                row[j] = (i == j ? 1 : 0) - row[j];
+            }
+        }
+    }
+
+    /**
+     * r = x - f(x)
+     */
+    private static void residual(final int[] slots, final CompiledExpression[] definitions, final double[] values,
+            final double[] x, final double[] r) {
+        put(slots, x, values);
+        for (int i = 0; i < slots.length; ++i) {
+            r[i] = x[i] - definitions[slots[i]].eval(values);
+        }
+    }
+
+    /**
+     * Estimates the Jacobian of the residual r at x by forward differences
+     */
+    private static void differences(final int[] slots, final CompiledExpression[] definitions, final double[] values,
+            final double[] x, final double[] r, final double[][] jacobian) {
+        final double[] shifted = new double[x.length];
+        final double[] rShifted = new double[x.length];
+        for (int j = 0; j < x.length; ++j) {
+            System.arraycopy(x, 0, shifted, 0, x.length);
+            final double h = 1e-7 * Math.max(1, Math.abs(x[j]));
+            shifted[j] += h;
+            residual(slots, definitions, values, shifted, rShifted);
+            for (int i = 0; i < x.length; ++i) {
+                jacobian[i][j] = (rShifted[i] - r[i]) / h;
+            }
+        }
+        put(slots, x, values);
+    }
+
+    /**
+     * Broyden's update of the Jacobian after the step t*step: J += (dr - J*dx) dx' / |dx|^2
+     */
+    private static void broyden(final double[][] jacobian, final double[] r, final double[] nextR, final double[] step,
+            final double t) {
+        double dx2 = 0;
+        for (final double s : step) {
+            dx2 += t * s * t * s;
+        }
+        if (dx2 == 0) {
+            return;
+        }
+        for (int i = 0; i < r.length; ++i) {
+            double jdx = 0;
+            for (int j = 0; j < step.length; ++j) {
+                jdx += jacobian[i][j] * t * step[j];
+            }
+            final double u = (nextR[i] - r[i] - jdx) / dx2;
+            for (int j = 0; j < step.length; ++j) {
+                jacobian[i][j] += u * t * step[j];
+            }
+        }
+    }
+
+    /**
+     * Solves a*x = b in place of b by Gaussian elimination with partial pivoting. a is left unchanged.
+     */
+    private static void solveLinear(final double[][] jacobian, final double[] b, final String[] names) {
+        final int m = b.length;
+        final double[][] a = new double[m][];
+        for (int i = 0; i < m; ++i) {
+            a[i] = jacobian[i].clone();
+        }
+        for (int col = 0; col < m; ++col) {
+            int pivot = col;
+            for (int i = col + 1; i < m; ++i) {
+                if (Math.abs(a[i][col]) > Math.abs(a[pivot][col])) {
+                    pivot = i;
+                }
+            }
+            if (a[pivot][col] == 0 || Double.isNaN(a[pivot][col])) {
+                throw new CyclicEquationsException("Could not solve the cyclic equations between " + Arrays.toString(names)
+                        + ": the Jacobian is singular");
+            }
+            final double[] row = a[pivot];
+            a[pivot] = a[col];
+            a[col] = row;
+            final double rhs = b[pivot];
+            b[pivot] = b[col];
+            b[col] = rhs;
+            for (int i = col + 1; i < m; ++i) {
+                final double factor = a[i][col] / a[col][col];
+                for (int j = col; j < m; ++j) {
+                    a[i][j] -= factor * a[col][j];
+                }
+                b[i] -= factor * b[col];
+            }
+        }
+        for (int i = m - 1; i >= 0; --i) {
+            double sum = b[i];
+            for (int j = i + 1; j < m; ++j) {
+                sum -= a[i][j] * b[j];
+            }
+            b[i] = sum / a[i][i];
+        }
+    }
+
+    private static void put(final int[] slots, final double[] x, final double[] values) {
+        for (int i = 0; i < slots.length; ++i) {
+            values[slots[i]] = x[i];
+        }
+    }
+
+    private static double norm(final double[] v) {
+        double max = 0;
+        for (final double d : v) {
+            if (Double.isNaN(d)) {
+                return d;
+            }
+            max = Math.max(max, Math.abs(d));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,147 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Binds variable names to slots of a double[] environment, so that evaluation only indexes into it. A variable bound
+ * by a function, e.g. x in integrate(x^2, x, 0, 1), takes the slot after those of the enclosing table.
+ */
+class SymbolTable {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final Pattern ARRAY = Pattern.compile("([^\\[]*)\\[([1-9][0-9]*)\\](?:\\[([1-9][0-9]*)\\])?");
+
+    static final SymbolTable EMPTY = new SymbolTable();
+
+    private final String[] names;
+    private final int[][] shapes;
+    private final Trie<Integer> slots;
+    private final SymbolTable parent;
+    private final String bound;
+
+    /**
+     * @param names the variable names. Each variable is bound to the slot equal to its index in this array, unless
+     *              arrays are declared before it. An array is declared as name[n] for a vector or name[rows][cols]
+     *              for a matrix, and takes a slot for each of its values in row-major order, named e.g. m[0][1].
+     */
+    SymbolTable(final String... names) {
+        this.slots = new Trie<>();
+        this.parent = null;
+        this.bound = null;
+        final String[] declared = new String[names.length];
+        final int[][] declaredShapes = new int[names.length][];
+        int size = 0;
+        boolean arrays = false;
+        for (int i = 0; i < names.length; ++i) {
+            final Matcher array = names[i] == null ? null : ARRAY.matcher(names[i]);
+            if (array != null && array.matches()) {
+                declared[i] = array.group(1);
+                declaredShapes[i] = array.group(3) == null ? new int[] { Integer.parseInt(array.group(2)) }
+                        : new int[] { Integer.parseInt(array.group(2)), Integer.parseInt(array.group(3)) };
+                arrays = true;
+            } else {
+                declared[i] = names[i];
+                declaredShapes[i] = Matrices.SCALAR;
+            }
+            checkName(declared[i]);
+            if (slots.get(declared[i], 0, declared[i].length()) != null) {
+                throw new IllegalArgumentException("Variable defined more than once: " + declared[i]);
+            }
+            slots.put(declared[i], size);
+            size += Matrices.size(declaredShapes[i]);
+        }
+        if (!arrays) {
+            this.names = names;
+            this.shapes = null;
+            return;
+        }
+        this.names = new String[size];
+        this.shapes = new int[size][];
+        int slot = 0;
+        for (int i = 0; i < declared.length; ++i) {
+            final int[] shape = declaredShapes[i];
+            shapes[slot] = shape;
+            for (int k = 0; k < Matrices.size(shape); ++k) {
+                this.names[slot++] = shape.length == 0 ? declared[i]
+                        : shape.length == 1 ? declared[i] + "[" + k + "]" : declared[i] + "[" + k / shape[1] + "][" + k % shape[1] + "]";
+            }
+        }
+    }
+
+    private SymbolTable(final SymbolTable parent, final String bound) {
+        this.names = null;
+        this.shapes = null;
+        this.slots = null;
+        this.parent = parent;
+        this.bound = bound;
+    }
+
+    private static void checkName(final String name) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Bad variable name: '" + name + "'. Names are letters, digits and _, not starting with a digit");
+        }
+    }
+
+    /**
+     * @return a table with the variables of this one and name, which hides a variable of this table of the same name
+     *         and takes the slot {@link #size()}
+     */
+    SymbolTable bind(final String name) {
+        checkName(name);
+        return new SymbolTable(this, name);
+    }
+
+    int size() {
+        return parent == null ? names.length : parent.size() + 1;
+    }
+
+    String name(final int slot) {
+        if (parent == null) {
+            return names[slot];
+        }
+        return slot == parent.size() ? bound : parent.name(slot);
+    }
+
+    /**
+     * @return the shape of the variable whose first value is in the slot, see {@link Matrices}; null for the other
+     *         slots of an array
+     */
+    int[] shape(final int slot) {
+        if (parent == null) {
+            return shapes == null ? Matrices.SCALAR : shapes[slot];
+        }
+        return slot == parent.size() ? Matrices.SCALAR : parent.shape(slot);
+    }
+
+    /**
+     * @return the names by slot of the outermost table. Not to be modified.
+     */
+    String[] names() {
+        return parent == null ? names : parent.names();
+    }
+
+    /**
+     * @return the slot of the name s[from..to), or -1 if it is not a variable
+     */
+    int slotOf(final CharSequence s, final int from, final int to) {
+        if (parent == null) {
+            final Integer slot = slots.get(s, from, to);
+            return slot == null ? -1 : slot;
+        }
+        if (to - from == bound.length()) {
+            int i = 0;
+            while (i < bound.length() && s.charAt(from + i) == bound.charAt(i)) {
+                i++;
+            }
+            if (i == bound.length()) {
+                return parent.size();
+            }
+        }
+        return parent.slotOf(s, from, to);
+    }
+
+    int slotOf(final String name) {
+        return slotOf(name, 0, name.length());
+    }
+}
@@ -0,0 +1,98 @@
+package com.keon.projects.calculator.logic;
+
+import java.util.Arrays;
+
+/**
+ * A prefix tree used by the {@link Lexer} to match operators and names against the input without substrings. Children
+ * are kept sparse, sorted by character.
+ *
+ * @param <T> the value type
+ */
+class Trie<T> {
+
+    private final Entry<T> root = new Entry<>(0);
+
+    Trie<T> put(final String key, final T value) {
+        Entry<T> e = root;
+        for (int i = 0; i < key.length(); ++i) {
+            e = e.add(key.charAt(i));
+        }
+        e.value = value;
+        return this;
+    }
+
+    /**
+     * @return the entry of the longest key that s[from..] starts with, or null if there is none
+     */
+    Entry<T> longestMatch(final CharSequence s, final int from) {
+        Entry<T> match = null;
+        Entry<T> e = root;
+        for (int i = from; i < s.length(); ++i) {
+            if ((e = e.child(s.charAt(i))) == null) {
+                break;
+            }
+            if (e.value != null) {
+                match = e;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * @return the value of the key equal to s[from..to), or null if there is none
+     */
+    T get(final CharSequence s, final int from, final int to) {
+        Entry<T> e = root;
+        for (int i = from; i < to && e != null; ++i) {
+            e = e.child(s.charAt(i));
+        }
+        return e == null ? null : e.value;
+    }
+
+    static class Entry<T> {
+
+        private static final char[] NO_KEYS = {};
+
+        /**
+         * The characters of the children, in ascending order
+         */
+        private char[] keys = NO_KEYS;
+        private Entry<T>[] children;
+        final int length;
+        T value;
+
+        private Entry(final int length) {
+            this.length = length;
+        }
+
+        private Entry<T> child(final char c) {
+            final int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        /**
+         * @return the child of character c, added if there is none
+         */
+        @SuppressWarnings("unchecked")
+        private Entry<T> add(final char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            final char[] k = new char[keys.length + 1];
+            final Entry<T>[] ch = new Entry[keys.length + 1];
+            System.arraycopy(keys, 0, k, 0, i);
+            System.arraycopy(keys, i, k, i + 1, keys.length - i);
+            if (children != null) {
+                System.arraycopy(children, 0, ch, 0, i);
+                System.arraycopy(children, i, ch, i + 1, keys.length - i);
+            }
+            k[i] = c;
+            ch[i] = new Entry<>(length + 1);
+            keys = k;
+            children = ch;
+            return ch[i];
+        }
+    }
+}
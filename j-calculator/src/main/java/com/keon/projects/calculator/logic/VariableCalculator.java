@@ -1,18 +1,17 @@
 package com.keon.projects.calculator.logic;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * A calculator that let's you define variables and perform algebra with them.
- * The variable definitions must be noncyclic - this does not solve equations.
+ * The variable definitions must be noncyclic, unless a {@link Solver} is given to solve the variables that are
+ * defined in terms of each other as systems of equations.
  * E.g. x=y+2 ; y = z^2 ; z=2; -> y=4; x=6
+ * Changing a variable with {@link #set(String, double)} only recomputes the variables that depend on it.
  * 
  * @author Keon Amini
  *
@@ -20,78 +19,202 @@ import java.util.regex.Pattern;
 public class VariableCalculator {
 
     private static final Pattern VAR_EXPR_PATTERN = Pattern.compile("(.+?)=(.+)");
-    private final Map<String, Expression> varExpressions = new HashMap<>();
+
+    private final SymbolTable symbols;
+    /**
+     * The names of the variables followed by those of the hidden variables of shared subexpressions, by slot
+     */
+    private final String[] slotNames;
+    private final CompiledExpression[] definitions;
+    private final DependencyGraph graph;
+    private final double[] values;
+    private final Solver solver;
+    private final Parallelism parallelism;
+    /**
+     * The expressions evaluated by {@link #eval(String)}, compiled against the symbols
+     */
+    private final ExpressionCache cache = new ExpressionCache(Calculator.CACHE_SIZE);
 
     public VariableCalculator(final String... vars) {
-        for (final String varExp : vars) {
-            final Matcher matcher = VAR_EXPR_PATTERN.matcher(varExp);
+        this(null, vars);
+    }
+
+    /**
+     * @param solver solves cyclic definitions, e.g. x = y/2 + 1 ; y = x^2 - 3, as systems of equations, or null to
+     *               reject them
+     */
+    public VariableCalculator(final Solver solver, final String... vars) {
+        this(solver, null, vars);
+    }
+
+    /**
+     * @param solver      solves cyclic definitions, or null to reject them
+     * @param parallelism evaluates independent definitions concurrently, or null to evaluate them on the calling
+     *                    thread
+     */
+    public VariableCalculator(final Solver solver, final Parallelism parallelism, final String... vars) {
+        this.solver = solver;
+        this.parallelism = parallelism;
+        final String[] names = new String[vars.length];
+        final String[] exprs = new String[vars.length];
+        for (int i = 0; i < vars.length; ++i) {
+            final Matcher matcher = VAR_EXPR_PATTERN.matcher(vars[i]);
             if (matcher.find()) {
-                final String var = matcher.group(1);
-                validateVarName(var);
-                final String expr = matcher.group(2);
-                varExpressions.put(var, new Expression(expr));
+                names[i] = matcher.group(1).trim();
+                exprs[i] = matcher.group(2);
             } else {
-                throw new RuntimeException("Bad variable format: " + varExp);
+                throw new RuntimeException("Bad variable format: " + vars[i]);
             }
         }
 
-        for (final Entry<String, Expression> e : varExpressions.entrySet()) {
-            e.setValue(evalVariable(new HashSet<>(), e.getKey()));
+        symbols = new SymbolTable(names);
+        for (int slot = 0; slot < names.length; ++slot) {
+            // the first array declared is at its own slot
+            if (symbols.shape(slot).length > 0) {
+                throw new IllegalArgumentException("Variables are scalars, but " + names[slot] + " is an array");
+            }
+        }
+        final CompiledExpression[] compiled = new CompiledExpression[vars.length];
+        final Node[] roots = new Node[vars.length];
+        for (int i = 0; i < vars.length; ++i) {
+            compiled[i] = Calculator.compile(exprs[i], symbols);
+            roots[i] = compiled[i].getRoot();
+            if (roots[i].shape().length > 0) {
+                throw new IllegalArgumentException("Variables are scalars, but " + names[i] + " is an array: " + exprs[i]);
+            }
+        }
+        final Node[] shared = CommonSubexpressions.eliminate(roots, vars.length);
+        slotNames = Arrays.copyOf(names, shared.length);
+        for (int slot = vars.length; slot < shared.length; ++slot) {
+            slotNames[slot] = "$" + (slot - vars.length);
         }
+        definitions = new CompiledExpression[shared.length];
+        final int[][] dependencies = new int[shared.length][];
+        for (int slot = 0; slot < shared.length; ++slot) {
+            final String text = slot < vars.length ? compiled[slot].toString() : shared[slot].toString();
+            definitions[slot] = new CompiledExpression(text, slotNames, shared[slot]);
+            dependencies[slot] = definitions[slot].variableSlots();
+        }
+        graph = new DependencyGraph(slotNames, dependencies);
 
+        values = new double[shared.length];
+        if (solver == null) {
+            // rejects cyclic definitions
+            graph.order();
+        }
+        for (final int[][] level : graph.levels()) {
+            update(level);
+        }
     }
 
+    /**
+     * Evaluates an expression against the current values of the variables. The compiled form of recently evaluated
+     * expressions is cached, see {@link #getCache()}.
+     */
     public double eval(final String expr) {
         if(expr.trim().isEmpty())
             return 0;
-        return Calculator.eval(evalVariables(expr));
+        if (symbols.size() == 0)
+            return Calculator.eval(expr);
+        return cache.get(Calculator.preprocess(expr), normalized -> Calculator.compileNormalized(normalized, symbols)).evalIn(values);
+    }
+
+    /**
+     * @return the cache of expressions used by {@link #eval(String)}, of the same size as {@link Calculator#getCache()}
+     */
+    public ExpressionCache getCache() {
+        return cache;
     }
 
-    private String evalVariables(String expr) {
-        final Iterator<Entry<String, Expression>> iter = varExpressions.entrySet().iterator();
-        Entry<String, Expression> varEntry;
-        while (iter.hasNext()) {
-            varEntry = iter.next();
-            expr = expr.replace(varEntry.getKey(), varEntry.getValue().expr);
-            iter.remove();
+    /**
+     * Compiles an expression over the variables of this calculator, to be evaluated repeatedly with
+     * {@link #eval(CompiledExpression)} as the variables change.
+     */
+    public CompiledExpression compile(final String expr) {
+        return Calculator.compile(expr, symbols);
+    }
+
+    /**
+     * Evaluates an expression compiled by {@link #compile(String)} against the current values of the variables.
+     */
+    public double eval(final CompiledExpression expr) {
+        if (expr.variables() != symbols.names()) {
+            throw new IllegalArgumentException("Expression was not compiled by this calculator: " + expr);
         }
-        return expr;
+        return expr.evalIn(values);
     }
 
     /**
-     * 
-     * @param unknowns
-     * @param var
-     * @return
+     * @return the current value of the variable
      */
-    private Expression evalVariable(final Set<String> unknowns, final String var) {
-        final Expression e = varExpressions.get(var);
-        if(e.simplified)
-            return e;
-        unknowns.add(var);
-        for (final String v : varExpressions.keySet()) {
-            if (!v.equals(var) && e.expr.contains(v)) {
-                if(unknowns.contains(v)) {
-                    throw new RuntimeException("Cyclic Equations are not allowed - Cycle found between 1+ symbols in " + unknowns + " and " + var + " in " + var + "=" + e.expr);
-                }
-                final String res = evalVariable(unknowns, v).expr;
-                unknowns.remove(v);
-                e.expr = e.expr.replace(v, res);
+    public double get(final String var) {
+        return values[slotOf(var)];
+    }
+
+    /**
+     * Replaces the definition of a variable by a value, and recomputes the variables that depend on it, in dependency
+     * order. Cycles that depend on it are solved again, starting from their current values.
+     */
+    public void set(final String var, final double value) {
+        final int slot = slotOf(var);
+        if (definitions[slot] != null) {
+            definitions[slot] = null;
+            graph.clearDependenciesOf(slot);
+        }
+        values[slot] = value;
+        final int[] dependents = graph.transitiveDependentsOf(slot);
+        // the slots of a component, and the components of a level, are next to each other
+        final List<int[]> level = new ArrayList<>();
+        for (int i = 0; i < dependents.length; ++i) {
+            final int[] component = graph.componentOf(dependents[i]);
+            if (!level.isEmpty() && graph.levelOf(level.get(0)[0]) != graph.levelOf(dependents[i])) {
+                update(level.toArray(new int[level.size()][]));
+                level.clear();
+            }
+            level.add(component);
+            while (i + 1 < dependents.length && graph.componentOf(dependents[i + 1]) == component) {
+                i++;
             }
         }
-        final String res = Double.toString(Calculator.eval(e.expr));
-        unknowns.remove(var);
-        e.simplified = true;
-        e.expr = res;
-        return e;
+        update(level.toArray(new int[level.size()][]));
     }
 
-    private void validateVarName(final String var) {
+    /**
+     * Recomputes the values of independent components, concurrently if there are enough of them
+     */
+    private void update(final int[][] components) {
+        if (parallelism != null) {
+            final int[] ends = new int[components.length + 1];
+            for (int c = 0; c < components.length; ++c) {
+                ends[c + 1] = ends[c] + components[c].length;
+            }
+            if (ends[components.length] >= parallelism.getThreshold()) {
+                parallelism.getPool().invoke(new LevelTask(this, components, ends, 0, components.length, parallelism.getDefinitionsPerTask()));
+                return;
+            }
+        }
+        for (final int[] component : components) {
+            update(component);
+        }
+    }
 
+    /**
+     * Recomputes the values of a component of the dependency graph, solving it if it is cyclic
+     */
+    void update(final int[] component) {
+        if (graph.isCyclic(component)) {
+            solver.solve(component, definitions, slotNames, values);
+        } else {
+            values[component[0]] = definitions[component[0]].eval(values);
+        }
     }
 
-    private void validateExpressions() {
-        //
+    private int slotOf(final String var) {
+        final int slot = symbols.slotOf(var);
+        if (slot == -1) {
+            throw new IllegalArgumentException("Undefined variable: " + var);
+        }
+        return slot;
     }
 
     public static class Input {
@@ -103,14 +226,5 @@ public class VariableCalculator {
             this.expr = expr;
         }
     }
-    
-    private static class Expression {
-        String expr;
-        boolean simplified;
-        Expression(final String expr) {
-            this.expr = expr;
-            this.simplified = false;
-        }
-    }
 
 }
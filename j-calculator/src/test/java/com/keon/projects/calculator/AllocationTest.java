@@ -0,0 +1,76 @@
+package com.keon.projects.calculator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.DoubleSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CalculatorEngine;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.FunctionDefinition;
+import com.keon.projects.calculator.logic.Gradient;
+
+public class AllocationTest {
+
+    private static final int EVALS = 100_000;
+    private static final int ROUNDS = 5;
+
+    private static long allocatedBytes(final CompiledExpression e, final double[] values) {
+        return allocatedBytes(() -> e.eval(values));
+    }
+
+    private static long allocatedBytes(final DoubleSupplier eval) {
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+        final long thread = Thread.currentThread().getId();
+        double sum = 0;
+        for (int i = 0; i < EVALS; ++i) { // warm up
+            sum += eval.getAsDouble();
+        }
+        // the JVM may allocate on this thread while it recompiles the loop, so the least of a few rounds is kept: an
+        // evaluation that allocates would allocate in every round
+        long allocated = Long.MAX_VALUE;
+        int rounds = 0;
+        for (; rounds < ROUNDS && allocated > 0; ++rounds) {
+            final long before = bean.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < EVALS; ++i) {
+                sum += eval.getAsDouble();
+            }
+            allocated = Math.min(allocated, bean.getThreadAllocatedBytes(thread) - before);
+        }
+        assertEquals(EVALS * (rounds + 1) * eval.getAsDouble(), sum, Math.abs(sum) * 1e-9);
+        return allocated;
+    }
+
+    @Test
+    public void testInterpreterDoesNotAllocate() {
+        final CompiledExpression e = Calculator.compile("sin(x)*y+avg(x,y,2)^2-ln(y)/(x%3)+x/^3", "x", "y");
+        assertEquals(0, allocatedBytes(e, new double[] { 1.5, 2.5 }));
+    }
+
+    @Test
+    public void testJitDoesNotAllocate() {
+        final CompiledExpression e = Calculator.compile("sin(x)*y+avg(x,y,2)^2-ln(y)/(x%3)+x/^3", "x", "y").jit();
+        assertEquals(0, allocatedBytes(e, new double[] { 1.5, 2.5 }));
+    }
+
+    @Test
+    public void testJitCallsDoNotAllocate() {
+        final CalculatorEngine engine = new CalculatorEngine()
+                .withFunction(FunctionDefinition.of("lerp", 3, (args, from, count) -> args[from] + (args[from + 1] - args[from]) * args[from + 2]));
+        final CompiledExpression e = engine.compile("lerp(x, y, 0.25) * norm(x, y) + total(x, lerp(y, x, x/y), 2)", "x", "y").jit();
+        assertEquals(0, allocatedBytes(e, new double[] { 1.5, 2.5 }));
+    }
+
+    @Test
+    public void testGradientDoesNotAllocate() {
+        final Gradient g = Calculator.compile("sin(x)*y + if(x > y, x^2, y^3) - max(x, y)/y", "x", "y").gradient();
+        final double[] values = { 1.5, 2.5 };
+        final double[] gradient = new double[2];
+        assertEquals(0, allocatedBytes(() -> g.eval(values, gradient)));
+    }
+}
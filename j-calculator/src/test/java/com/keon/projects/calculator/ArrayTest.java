@@ -0,0 +1,144 @@
+package com.keon.projects.calculator;
+
+import static com.keon.projects.calculator.logic.Calculator.eval;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.VariableCalculator;
+
+public class ArrayTest {
+
+    private static double[] evalArray(final String exp) {
+        return Calculator.compile(exp).evalArray();
+    }
+
+    @Test
+    public void testLiterals() {
+        assertArrayEquals(new double[] { 1, 2, 3 }, evalArray("[1, 2, 1+2]"));
+        assertArrayEquals(new int[] { 3 }, Calculator.compile("[1, 2, 3]").getShape());
+        assertArrayEquals(new double[] { 1, 2, 3, 4 }, evalArray("[[1, 2], [3, 4]]"));
+        assertArrayEquals(new int[] { 2, 2 }, Calculator.compile("[[1, 2], [3, 4]]").getShape());
+        assertArrayEquals(new int[0], Calculator.compile("dot([1], [2])").getShape());
+        assertArrayEquals(new double[] { 5 }, evalArray("2+3"));
+    }
+
+    @Test
+    public void testElementwise() {
+        assertArrayEquals(new double[] { 5, 7, 9 }, evalArray("[1, 2, 3] + [4, 5, 6]"));
+        assertArrayEquals(new double[] { 1, 0 }, evalArray("2 - [1, 2]"));
+        assertArrayEquals(new double[] { -1, 0 }, evalArray("[1, 2] - 2"));
+        assertArrayEquals(new double[] { -1, -2 }, evalArray("-[1, 2]"));
+        assertArrayEquals(new double[] { 1, 4, 9, 16 }, evalArray("[[1, 2], [3, 4]]^2"));
+        assertArrayEquals(new double[] { 1, 0, 1 }, evalArray("[1, 2, 3] != 2"));
+        assertArrayEquals(new double[] { 2, 3 }, evalArray("sqrt([4, 9])"));
+        assertArrayEquals(new double[] { 7, 11 }, evalArray("[1, 2]*2 + [5, 7]"));
+    }
+
+    @Test
+    public void testReductions() {
+        assertEquals(32.0, eval("dot([1, 2, 3], [4, 5, 6])"));
+        assertEquals(30.0, eval("dot([[1, 2], [3, 4]], [[1, 2], [3, 4]])"));
+        assertEquals(5.0, eval("max([1, 5, 2])"));
+        assertEquals(7.0, eval("max([1, 2], 7, [3])"));
+        assertEquals(6.0, eval("total([1, 2, 3])"));
+        assertEquals(2.0, eval("avg([1, 2, 3])"));
+        assertEquals(5.0, eval("norm([3, 4])"));
+        assertEquals(5.0, eval("norm(3, 4)"));
+    }
+
+    @Test
+    public void testMatmul() {
+        assertArrayEquals(new double[] { 58, 64, 139, 154 }, evalArray("matmul([[1, 2, 3], [4, 5, 6]], [[7, 8], [9, 10], [11, 12]])"));
+        assertArrayEquals(new double[] { 5, 11 }, evalArray("matmul([[1, 2], [3, 4]], [1, 2])"));
+        assertArrayEquals(new double[] { 7, 10 }, evalArray("matmul([1, 2], [[1, 2], [3, 4]])"));
+        assertEquals(11.0, eval("matmul([1, 2], [3, 4])"));
+        assertArrayEquals(new double[] { 1, 4, 2, 5, 3, 6 }, evalArray("transpose([[1, 2, 3], [4, 5, 6]])"));
+        assertArrayEquals(new double[] { 1, 2 }, evalArray("transpose([1, 2])"));
+    }
+
+    @Test
+    public void testLargeMatrices() {
+        final int m = 70, k = 45, n = 38;
+        final Random random = new Random(7);
+        final double[] values = new double[m * k + k * n];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = random.nextDouble() - 0.5;
+        }
+        final CompiledExpression e = Calculator.compile("matmul(transpose(transpose(a)), b)", "a[" + m + "][" + k + "]", "b[" + k + "][" + n + "]");
+        assertEquals(m * k + k * n, e.getVariables().length);
+        assertEquals("a[1][2]", e.getVariables()[k + 2]);
+        final double[] res = e.evalArray(values);
+        assertEquals(m * n, res.length);
+        for (int r = 0; r < m; ++r) {
+            for (int c = 0; c < n; ++c) {
+                double expected = 0;
+                for (int p = 0; p < k; ++p) {
+                    expected += values[r * k + p] * values[m * k + p * n + c];
+                }
+                assertEquals(expected, res[r * n + c], 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testVariables() {
+        final CompiledExpression e = Calculator.compile("dot(v, w) + x*total(v)", "v[3]", "x", "w[3]");
+        assertArrayEquals(new String[] { "v[0]", "v[1]", "v[2]", "x", "w[0]", "w[1]", "w[2]" }, e.getVariables());
+        assertEquals(32.0 + 2 * 6, e.eval(1, 2, 3, 2, 4, 5, 6));
+        assertEquals(e.eval(1, 2, 3, 2, 4, 5, 6), e.jit().eval(1, 2, 3, 2, 4, 5, 6));
+
+        final double[][] columns = { { 1, 0 }, { 2, 1 }, { 3, 0 }, { 2, 1 }, { 4, 1 }, { 5, 1 }, { 6, 1 } };
+        final double[] out = new double[2];
+        e.evalBatch(columns, out);
+        assertArrayEquals(new double[] { 44, 2 }, out);
+
+        final CompiledExpression product = Calculator.compile("total(1 - matmul(m, v)) + max(sqrt(v))", "m[2][2]", "v[2]");
+        final double[][] rows = { { 1, 0 }, { 2, 0 }, { 3, 0 }, { 4, 1 }, { 1, 4 }, { 2, 9 } };
+        product.evalBatch(rows, out);
+        assertEquals(product.eval(1, 2, 3, 4, 1, 2), out[0], 1e-15);
+        assertEquals(product.eval(0, 0, 0, 1, 4, 9), out[1], 1e-15);
+        assertEquals(2 - 5 - 11 + Math.sqrt(2), out[0], 1e-12);
+    }
+
+    @Test
+    public void testSharedSubexpressions() {
+        final VariableCalculator calc = new VariableCalculator("x = 2", "a = dot([x, 1, x], [x, 3, 5]) + 1", "b = dot([x, 1, x], [x, 3, 5])*2",
+                "c = 3 - dot([x, 1, x], [x, 3, 5])");
+        assertEquals(18.0, calc.get("a"));
+        assertEquals(34.0, calc.get("b"));
+        assertEquals(-14.0, calc.get("c"));
+        calc.set("x", 1);
+        assertEquals(10.0, calc.get("a"));
+        assertEquals(9.0, calc.eval("total([a, x] * 2) - 13"));
+    }
+
+    @Test
+    public void testErrors() {
+        assertThrows(RuntimeException.class, () -> evalArray("[1, 2] + [1, 2, 3]"));
+        assertThrows(RuntimeException.class, () -> evalArray("[]"));
+        assertThrows(RuntimeException.class, () -> evalArray("[[1], [1, 2]]"));
+        assertThrows(RuntimeException.class, () -> evalArray("[[[1]]]"));
+        assertThrows(RuntimeException.class, () -> evalArray("[1, 2"));
+        assertThrows(RuntimeException.class, () -> evalArray("[1, 2)"));
+        assertThrows(RuntimeException.class, () -> evalArray("1, 2]"));
+        assertThrows(RuntimeException.class, () -> evalArray("matmul([1, 2], [[1, 2]])"));
+        assertThrows(RuntimeException.class, () -> evalArray("matmul(1, 2)"));
+        assertThrows(RuntimeException.class, () -> evalArray("dot([1, 2], [1, 2, 3])"));
+        assertThrows(RuntimeException.class, () -> evalArray("if([1, 2], 1, 2)"));
+        assertThrows(RuntimeException.class, () -> evalArray("sum(i, 1, 2, [i, 1])"));
+        // an array is not a scalar
+        assertThrows(RuntimeException.class, () -> eval("[1, 2]"));
+        assertThrows(RuntimeException.class, () -> Calculator.compile("v*2", "v[2]").evalBatch(new double[][] { { 1 }, { 2 } }, new double[1]));
+        assertThrows(RuntimeException.class, () -> Calculator.compile("v*2", "v[2]", "v").eval(1, 2, 3));
+        assertThrows(IllegalArgumentException.class, () -> new VariableCalculator("v = [1, 2]"));
+        assertThrows(IllegalArgumentException.class, () -> new VariableCalculator("v[2] = 1"));
+        assertThrows(UnsupportedOperationException.class, () -> Calculator.compile("dot(v, v)", "v[2]").gradient());
+    }
+}
@@ -0,0 +1,79 @@
+package com.keon.projects.calculator;
+
+import com.keon.projects.calculator.logic.CompiledExpression;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.keon.projects.calculator.logic.Calculator.compile;
+import static com.keon.projects.calculator.logic.Calculator.evalBatch;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BatchEvaluationTest {
+
+    private static final int ROWS = 5_000;
+
+    @Test
+    public void testMatchesScalarEvaluation() {
+        final double[] x = new double[ROWS];
+        final double[] y = new double[ROWS];
+        for (int i = 0; i < ROWS; ++i) {
+            x[i] = i * 0.01;
+            y[i] = Math.sqrt(i);
+        }
+        final String[] exps = { "x*y + 2*x", "sin(x) + avg(x, y, 2*y)^2", "x /^ 3 - y % 2", "-x^2 + 'pi'*y/(1+x)", "7" };
+        for (final String exp : exps) {
+            final CompiledExpression e = compile(exp, "x", "y");
+            for (final CompiledExpression c : new CompiledExpression[] { e, e.jit() }) {
+                final double[] out = new double[ROWS];
+                c.evalBatch(new double[][] { x, y }, out);
+                for (int i = 0; i < ROWS; ++i) {
+                    assertEquals(e.eval(x[i], y[i]), out[i], exp);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        final int rows = 100_003;
+        final double[] x = new double[rows];
+        for (int i = 0; i < rows; ++i) {
+            x[i] = i;
+        }
+        final CompiledExpression e = compile("x^2 - 3*x", "x");
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (final int rowsPerTask : new int[] { 1, 5_000, rows }) {
+                final double[] out = new double[rows];
+                e.evalBatch(new double[][] { x }, out, pool, rowsPerTask);
+                for (int i = 0; i < rows; ++i) {
+                    assertEquals(x[i] * x[i] - 3 * x[i], out[i]);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testNamedColumns() {
+        final Map<String, double[]> columns = new LinkedHashMap<>();
+        columns.put("price", new double[] { 1, 2, 3 });
+        columns.put("qty", new double[] { 10, 20, 30 });
+        final double[] out = new double[3];
+        evalBatch("price * qty - 1", columns, out);
+        assertEquals(9.0, out[0]);
+        assertEquals(39.0, out[1]);
+        assertEquals(89.0, out[2]);
+    }
+
+    @Test
+    public void testShortColumn() {
+        final CompiledExpression e = compile("x + 1", "x");
+        assertThrows(IllegalArgumentException.class, () -> e.evalBatch(new double[][] { new double[2] }, new double[3]));
+    }
+}
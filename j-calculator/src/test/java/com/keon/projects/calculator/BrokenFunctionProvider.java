@@ -0,0 +1,20 @@
+package com.keon.projects.calculator;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.keon.projects.calculator.logic.FunctionDefinition;
+import com.keon.projects.calculator.logic.FunctionProvider;
+
+/**
+ * Discovered by the calculator through META-INF/services, before {@link TestFunctionProvider}: redefines sin, which is
+ * skipped, along with a function that is registered
+ */
+public class BrokenFunctionProvider implements FunctionProvider {
+
+    @Override
+    public Collection<FunctionDefinition> functions() {
+        return Arrays.asList(FunctionDefinition.of("sin", 1, (args, from, count) -> 0),
+                FunctionDefinition.of("tripled", 1, (args, from, count) -> 3 * args[from]));
+    }
+}
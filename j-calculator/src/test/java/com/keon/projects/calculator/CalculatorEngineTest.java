@@ -0,0 +1,103 @@
+package com.keon.projects.calculator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CalculatorEngine;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.FunctionDefinition;
+import com.keon.projects.calculator.logic.Gradient;
+
+public class CalculatorEngineTest {
+
+    @Test
+    public void testFunctionsAreFixed() {
+        final CalculatorEngine engine = new CalculatorEngine();
+        assertEquals(5.0, engine.eval("hypot(3, 4)"));
+        Calculator.register(FunctionDefinition.of("engine_late", 1, (args, from, count) -> args[from] + 1));
+        assertEquals(2.0, Calculator.eval("engine_late(1)"));
+        assertThrows(RuntimeException.class, () -> engine.eval("engine_late(1)"));
+
+        final CalculatorEngine twice = engine.withFunction(FunctionDefinition.of("engine_twice", 1, (args, from, count) -> 2 * args[from]));
+        assertEquals(6.0, twice.eval("engine_twice(3)"));
+        assertEquals(8.0, twice.compile("engine_twice(x)^2 / 2", "x").eval(2));
+        assertThrows(RuntimeException.class, () -> engine.eval("engine_twice(3)"));
+        assertThrows(RuntimeException.class, () -> Calculator.eval("engine_twice(3)"));
+        assertThrows(IllegalArgumentException.class, () -> twice.withFunction(FunctionDefinition.of("sin", 1, (args, from, count) -> 0)));
+        assertThrows(IllegalArgumentException.class, () -> twice.withFunction(FunctionDefinition.of("engine_twice", 1, (args, from, count) -> 0)));
+    }
+
+    @Test
+    public void testJitCallsEngineFunctions() {
+        final CalculatorEngine engine = new CalculatorEngine().withFunction(FunctionDefinition.of("engine_jit", 1, (args, from, count) -> 2 * args[from]));
+        final CompiledExpression e = engine.compile("engine_jit(x) + 1", "x");
+        assertEquals(7.0, e.eval(3));
+        assertEquals(7.0, e.jit().eval(3));
+
+        // a global function of the same name registered later is not the one called
+        Calculator.register(FunctionDefinition.of("engine_jit", 1, (args, from, count) -> -args[from]));
+        assertEquals(7.0, engine.compile("engine_jit(x) + 1", "x").jit().eval(3));
+        assertEquals(-2.0, Calculator.compile("engine_jit(x) + 1", "x").jit().eval(3));
+    }
+
+    @Test
+    public void testCache() {
+        final CalculatorEngine engine = new CalculatorEngine();
+        engine.eval("1 + 2");
+        engine.eval("1+2");
+        assertEquals(1, engine.getCache().size());
+        assertEquals(1, engine.getCache().hitCount());
+        final CalculatorEngine uncached = engine.withCacheSize(0);
+        assertEquals(3.0, uncached.eval("1+2"));
+        assertEquals(0, uncached.getCache().size());
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final CalculatorEngine engine = new CalculatorEngine().withCacheSize(16);
+        final CompiledExpression shared = engine.compile("sin(x)*y + if(x > y, sqrt(x), y^2) + sum(i, 1, 10, i*x)", "x", "y");
+        final Gradient gradient = engine.compile("sin(x)*y + if(x > y, sqrt(x), y^2) + 55*x", "x", "y").gradient("x");
+        final int threads = 8;
+        final ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            // registration elsewhere does not disturb the engine
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 50; ++i) {
+                    Calculator.register(FunctionDefinition.of("engine_concurrent_" + i, 1, (args, from, count) -> args[from]));
+                }
+            }));
+            for (int t = 0; t < threads; ++t) {
+                final int thread = t;
+                futures.add(pool.submit(() -> {
+                    final double[] derivative = new double[1];
+                    for (int i = 0; i < 2000; ++i) {
+                        final double x = thread + i * 0.001;
+                        final double y = 1 - x;
+                        final double expected = Math.sin(x) * y + (x > y ? Math.sqrt(x) : y * y) + 55 * x;
+                        assertEquals(expected, shared.eval(x, y), 1e-12);
+                        assertEquals(expected, gradient.eval(new double[] { x, y }, derivative), 1e-12);
+                        assertEquals(Math.cos(x) * y + (x > y ? 0.5 / Math.sqrt(x) : 0) + 55, derivative[0], 1e-9);
+                        // more distinct expressions than the cache holds
+                        assertEquals(i % 40 + thread, engine.eval((i % 40) + "+" + thread), 0);
+                        assertEquals(2 * x, engine.compile("x+x", "x").eval(x), 0);
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
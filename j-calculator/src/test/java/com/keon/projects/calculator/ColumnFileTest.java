@@ -0,0 +1,90 @@
+package com.keon.projects.calculator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.ColumnFile;
+import com.keon.projects.calculator.logic.CompiledExpression;
+
+public class ColumnFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testFormats() throws IOException {
+        final double[] values = { 1.5, -2, Double.NaN, 1e300 };
+        final ColumnFile column = ColumnFile.write(dir.resolve("a.col"), values);
+        assertEquals(4, column.getRows());
+        assertEquals(16 + 4 * 8, Files.size(column.getPath()));
+        assertArrayEquals(values, ColumnFile.open(column.getPath()).read(0, 4));
+        assertArrayEquals(new double[] { -2, Double.NaN }, column.read(1, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> column.read(3, 2));
+
+        final ByteBuffer raw = ByteBuffer.allocate(3 * 8).order(ByteOrder.LITTLE_ENDIAN);
+        raw.putDouble(1).putDouble(2).putDouble(3);
+        final Path rawPath = Files.write(dir.resolve("b.raw"), raw.array());
+        assertArrayEquals(new double[] { 1, 2, 3 }, ColumnFile.open(rawPath).read(0, 3));
+        assertArrayEquals(new double[] { 1, 2, 3 }, ColumnFile.openRaw(rawPath).read(0, 3));
+
+        final Path bad = Files.write(dir.resolve("c.raw"), new byte[12]);
+        assertThrows(IOException.class, () -> ColumnFile.open(bad));
+        final Path truncated = dir.resolve("d.col");
+        Files.write(truncated, Arrays.copyOf(Files.readAllBytes(column.getPath()), 16 + 3 * 8));
+        assertThrows(IOException.class, () -> ColumnFile.open(truncated));
+    }
+
+    @Test
+    public void testEvalBatch() throws IOException {
+        // several windows of rows, the last of them partial
+        final int rows = 3 * 64 * 1024 + 17;
+        final double[] x = new double[rows];
+        final double[] y = new double[rows];
+        for (int i = 0; i < rows; ++i) {
+            x[i] = i * 0.001;
+            y[i] = rows - i;
+        }
+        final ColumnFile xs = ColumnFile.write(dir.resolve("x.col"), x);
+        final ColumnFile ys = ColumnFile.write(dir.resolve("y.col"), y);
+        final CompiledExpression e = Calculator.compile("sin(x)*y + if(x > 100, 1, 0)", "x", "y");
+        final double[] expected = new double[rows];
+        e.evalBatch(new double[][] { x, y }, expected);
+
+        final ColumnFile out = ColumnFile.create(dir.resolve("out.col"), rows);
+        e.evalBatch(new ColumnFile[] { xs, ys }, out);
+        assertArrayEquals(expected, ColumnFile.open(out.getPath()).read(0, rows));
+
+        final ColumnFile parallel = ColumnFile.create(dir.resolve("parallel.col"), rows);
+        e.jit().evalBatch(new ColumnFile[] { xs, ys }, parallel, ForkJoinPool.commonPool());
+        assertArrayEquals(expected, parallel.read(0, rows));
+
+        // fewer output rows than input rows evaluates a prefix
+        final Map<String, ColumnFile> columns = new LinkedHashMap<>();
+        columns.put("y", ys);
+        columns.put("x", xs);
+        final ColumnFile prefix = ColumnFile.create(dir.resolve("prefix.col"), 10);
+        Calculator.evalBatch("sin(x)*y + if(x > 100, 1, 0)", columns, prefix);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(expected[i], prefix.read(i, 1)[0]);
+        }
+
+        final ColumnFile longer = ColumnFile.create(dir.resolve("longer.col"), rows + 1);
+        assertThrows(IllegalArgumentException.class, () -> e.evalBatch(new ColumnFile[] { xs, ys }, longer));
+        assertThrows(RuntimeException.class, () -> e.evalBatch(new ColumnFile[] { xs }, out));
+    }
+}
@@ -0,0 +1,80 @@
+package com.keon.projects.calculator;
+
+import com.keon.projects.calculator.logic.CalculatorEngine;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.FunctionDefinition;
+import org.junit.jupiter.api.Test;
+
+import static com.keon.projects.calculator.logic.Calculator.compile;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CompiledExpressionTest {
+
+    @Test
+    public void testConstant() {
+        final CompiledExpression e = compile("1 + (2^3)^2 * 2");
+        assertEquals(129.0, e.eval());
+        assertEquals(129.0, e.eval());
+    }
+
+    @Test
+    public void testVariables() {
+        final CompiledExpression e = compile("x*y + 2*x", "x", "y");
+        assertArrayEquals(new String[] { "x", "y" }, e.getVariables());
+        assertEquals(8.0, e.eval(2, 2));
+        assertEquals(0.0, e.eval(0, 5));
+        assertEquals(-3.0, e.eval(-1, 1));
+    }
+
+    @Test
+    public void testVariablesInFunctions() {
+        final CompiledExpression e = compile("sin(x) + avg(x, y, 2*y)^2", "x", "y");
+        assertEquals(1.0, e.eval(0, 1));
+        assertEquals(Math.sin(3) + 25.0, e.eval(3, 4));
+    }
+
+    @Test
+    public void testLongestVariableMatch() {
+        final CompiledExpression e = compile("xx - x", "x", "xx");
+        assertEquals(9.0, e.eval(1, 10));
+    }
+
+    @Test
+    public void testWrongValueCount() {
+        final CompiledExpression e = compile("x + 1", "x");
+        assertThrows(RuntimeException.class, () -> e.eval(1, 2));
+    }
+
+    @Test
+    public void testUnknownSymbol() {
+        assertThrows(UnsupportedOperationException.class, () -> compile("x + y", "x"));
+    }
+
+    @Test
+    public void testJit() {
+        final String[] exps = { "1 + (2^3)^2 * 2", "x*y + 2*x", "sin(x) + avg(x, y, 2*y)^2", "x /^ 3 - y % 2",
+                "exp(ln(x)) / cos(y) + tan(x*y) + sqrt(x)", "-x^2 + 'pi'*y" };
+        for (final String exp : exps) {
+            final CompiledExpression interpreted = compile(exp, "x", "y");
+            final CompiledExpression jitted = interpreted.jit();
+            assertNotSame(interpreted, jitted);
+            for (double x = -2; x <= 2; x += 0.5) {
+                for (double y = -2; y <= 2; y += 0.5) {
+                    assertEquals(interpreted.eval(x, y), jitted.eval(x, y), exp);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testJitCallEvaluatingAnotherExpression() {
+        final CompiledExpression inner = compile("total(x, 10, 100)", "x").jit();
+        final CalculatorEngine engine = new CalculatorEngine()
+                .withFunction(FunctionDefinition.of("nested", 2, (args, from, count) -> inner.eval(args[from]) + args[from + 1]));
+        final CompiledExpression e = engine.compile("nested(x, y) + nested(y, x)", "x", "y").jit();
+        assertEquals(2 * 110 + 2 * (1 + 2), e.eval(1, 2));
+    }
+}
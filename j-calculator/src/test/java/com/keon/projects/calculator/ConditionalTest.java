@@ -0,0 +1,65 @@
+package com.keon.projects.calculator;
+
+import static com.keon.projects.calculator.logic.Calculator.eval;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+
+public class ConditionalTest {
+
+    @Test
+    public void testComparisons() {
+        assertEquals(1.0, eval("1<2"));
+        assertEquals(0.0, eval("2<=1"));
+        assertEquals(1.0, eval("2>=2"));
+        assertEquals(0.0, eval("1>2"));
+        assertEquals(1.0, eval("1+1==2"));
+        assertEquals(1.0, eval("2*3!=5"));
+        assertEquals(1.0, eval("-2<-1"));
+        assertEquals(0.0, eval("0/0==0/0"));
+    }
+
+    @Test
+    public void testIf() {
+        assertEquals(10.0, eval("if(1<2, 10, 20)"));
+        assertEquals(20.0, eval("if(1>2, 10, 20)"));
+        assertEquals(3.0, eval("1+if(0, 1, if(1, 2, 3))"));
+        assertThrows(RuntimeException.class, () -> eval("if(1, 2)"));
+        assertThrows(RuntimeException.class, () -> eval("if(1, 2, 3, 4)"));
+    }
+
+    @Test
+    public void testCoalesceMinMax() {
+        assertEquals(2.0, eval("coalesce(0/0, 2, 3)"));
+        assertEquals(1.0, eval("coalesce(1)"));
+        assertEquals(Double.NaN, eval("coalesce(0/0, 0/0)"));
+        assertEquals(-1.0, eval("min(3, -1, 2)"));
+        assertEquals(3.0, eval("max(3, -1, 2)"));
+    }
+
+    @Test
+    public void testCompiled() {
+        final CompiledExpression e = Calculator.compile("if(x<0, -x, if(x<y, coalesce(ln(x-1), x*y), max(x, y, 3)))", "x", "y");
+        final CompiledExpression jit = e.jit();
+        assertNotSame(e, jit);
+        final double[] xs = { -2, 0, 0.5, 1, 1.5, 2, 4 };
+        final double[][] columns = { xs, new double[xs.length] };
+        final double[] out = new double[xs.length];
+        for (int i = 0; i < xs.length; ++i) {
+            final double x = xs[i];
+            final double y = columns[1][i] = 2 * i - 3;
+            final double expected = x < 0 ? -x : x < y ? (x >= 1 ? Math.log(x - 1) : x * y) : Math.max(Math.max(x, y), 3);
+            assertEquals(expected, e.eval(x, y));
+            assertEquals(expected, jit.eval(x, y));
+        }
+        e.evalBatch(columns, out);
+        for (int i = 0; i < xs.length; ++i) {
+            assertEquals(e.eval(xs[i], columns[1][i]), out[i]);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 
 import static com.keon.projects.calculator.logic.Calculator.eval;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class EvaluatorTest {
 
@@ -58,4 +59,108 @@ public class EvaluatorTest {
         assertEquals(9.0 , eval("1 + 3*avg(2, avg(3,5), 1) + 1"));
         assertEquals(16.0 , eval("9*(avg(1+2^1, avg(1, (sin(0)), 1/5*avg((avg(5))^2)), -1))^2*1"));
     }
+
+    @Test
+    public void testNumbers() {
+        assertEquals(0.1, eval("0.1"));
+        assertEquals(123.456, eval("123.456"));
+        assertEquals(1.0E-5, eval("1.0E-5"));
+        assertEquals(2.5E10, eval("2.5e10"));
+        assertEquals(0.30000000000000004, eval("0.1 + 0.2"));
+        assertEquals(12345678901234567890.0, eval("12345678901234567890"));
+        assertEquals(Double.MAX_VALUE, eval(Double.toString(Double.MAX_VALUE)));
+    }
+
+    @Test
+    public void testMalformed() {
+        assertThrows(RuntimeException.class, () -> eval("1.2.3"));
+        assertThrows(RuntimeException.class, () -> eval("(1 + 2"));
+        assertThrows(RuntimeException.class, () -> eval("1 + 2)"));
+        assertThrows(RuntimeException.class, () -> eval("sin 1"));
+        assertThrows(RuntimeException.class, () -> eval("foo(1)"));
+        assertThrows(RuntimeException.class, () -> eval("avg(1,,2)"));
+        assertThrows(RuntimeException.class, () -> eval("sin(1, 2)"));
+        assertThrows(RuntimeException.class, () -> eval("2 * / 3"));
+    }
+
+    @Test
+    public void testLongExpression() {
+        final StringBuilder exp = new StringBuilder("0");
+        for (int i = 1; i <= 10_000; ++i) {
+            exp.append(" + ").append(i).append(".5");
+        }
+        assertEquals(50_005_000.0 + 5_000.0, eval(exp.toString()));
+    }
+
+    @Test
+    public void testSigns() {
+        assertEquals(-4.0, eval("-2^2"));
+        assertEquals(-5.0, eval("-2*3+1"));
+        assertEquals(3.0, eval("1--2"));
+        assertEquals(-1.0, eval("1+-2"));
+        assertEquals(-6.0, eval("2*-3"));
+        assertEquals(0.5, eval("2^-1"));
+        assertEquals(1.0, eval("--1"));
+    }
+
+    @Test
+    public void testLongMixedExpression() {
+        final StringBuilder exp = new StringBuilder("1");
+        double expected = 1;
+        for (int i = 1; i <= 5_000; ++i) {
+            exp.append(" + ").append(i).append(" * 2 - ").append(i).append(" / 2");
+            expected = expected + i * 2.0 - i / 2.0;
+        }
+        assertEquals(expected, eval(exp.toString()));
+    }
+
+    @Test
+    public void testDeeplyNested() {
+        final int depth = 100_000;
+        final StringBuilder exp = new StringBuilder();
+        for (int i = 0; i < depth; ++i) {
+            exp.append("(1+");
+        }
+        exp.append('1');
+        for (int i = 0; i < depth; ++i) {
+            exp.append(')');
+        }
+        assertEquals(depth + 1.0, eval(exp.toString()));
+    }
+
+    @Test
+    public void testDeeplyNestedCallsAndSigns() {
+        final int depth = 50_000;
+        final StringBuilder calls = new StringBuilder();
+        final StringBuilder signs = new StringBuilder();
+        final StringBuilder powers = new StringBuilder("1");
+        for (int i = 0; i < depth; ++i) {
+            calls.append("avg(1,");
+            signs.append("-(");
+            powers.append("^1");
+        }
+        calls.append('1');
+        signs.append('2');
+        for (int i = 0; i < depth; ++i) {
+            calls.append(')');
+            signs.append(')');
+        }
+        assertEquals(1.0, eval(calls.toString()));
+        assertEquals(2.0, eval(signs.toString()));
+        assertEquals(1.0, eval(powers.toString()));
+        assertThrows(RuntimeException.class, () -> eval(calls.substring(1)));
+        assertThrows(RuntimeException.class, () -> eval(signs.substring(0, signs.length() - 1)));
+    }
+
+    @Test
+    public void testGroupErrors() {
+        assertThrows(RuntimeException.class, () -> eval("(1,2)"));
+        assertThrows(RuntimeException.class, () -> eval("(1(2))"));
+        assertThrows(RuntimeException.class, () -> eval("1)"));
+        assertThrows(RuntimeException.class, () -> eval("1,2"));
+        assertThrows(RuntimeException.class, () -> eval("avg(1,)"));
+        assertThrows(RuntimeException.class, () -> eval("avg()"));
+        assertEquals(-8.0, eval("-(1+1)^3"));
+        assertEquals(4.0, eval("avg((1),avg(2,(3+4)/2+2.5),7)"));
+    }
 }
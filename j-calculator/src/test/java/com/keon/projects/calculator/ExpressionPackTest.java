@@ -0,0 +1,152 @@
+package com.keon.projects.calculator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CalculatorEngine;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.ExpressionPack;
+import com.keon.projects.calculator.logic.FunctionDefinition;
+import com.keon.projects.calculator.logic.VariableCalculator;
+
+public class ExpressionPackTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Calculator.register(FunctionDefinition.of("pack_scale", 2, (args, from, count) -> args[from] * args[from + 1]));
+        final Map<String, CompiledExpression> expressions = new LinkedHashMap<>();
+        expressions.put("constant", Calculator.compile("1.5*2"));
+        expressions.put("poly", Calculator.compile("x^3 - 2*x*y + y/4 - 0.1", "x", "y"));
+        expressions.put("functions", Calculator.compile("avg(sin(x), cos(y), 3) + max(x, y) + x/^3 + x%0.7", "x", "y"));
+        expressions.put("lazy", Calculator.compile("if(x > y, coalesce(ln(x - 1), -1), x >= 1)", "x", "y"));
+        expressions.put("binding", Calculator.compile("integrate(sum(i, 1, 3, t^i), t, 0, x) + y", "x", "y"));
+        expressions.put("user", Calculator.compile("pack_scale(x, 3)", "x"));
+        expressions.put("arrays", Calculator.compile("dot([x, y, 1], [1, 2, 3]) + total(sqrt([x, y]^2)*2) + max(matmul([[x, 1], [y, 2]], [1, x]))", "x", "y"));
+        final Path path = dir.resolve("formulas.pack");
+        ExpressionPack.write(path, expressions);
+
+        final ExpressionPack pack = ExpressionPack.load(path);
+        assertEquals(expressions.size(), pack.size());
+        assertEquals(expressions.keySet(), pack.names());
+        for (final Map.Entry<String, CompiledExpression> e : expressions.entrySet()) {
+            final CompiledExpression loaded = pack.get(e.getKey());
+            assertSame(loaded, pack.get(e.getKey()));
+            assertEquals(e.getValue().toString(), loaded.toString());
+            assertArrayEquals(e.getValue().getVariables(), loaded.getVariables());
+            for (final double x : new double[] { -1.5, 0, 0.5, 2, 7 }) {
+                final double[] values = loaded.getVariables().length == 2 ? new double[] { x, 1 - x } : loaded.getVariables().length == 1 ? new double[] { x } : new double[0];
+                assertEquals(e.getValue().eval(values), loaded.eval(values));
+                assertEquals(e.getValue().eval(values), loaded.jit().eval(values));
+            }
+        }
+        assertNull(pack.get("missing"));
+    }
+
+    @Test
+    public void testEngineFunctions() throws IOException {
+        final CalculatorEngine engine = new CalculatorEngine().withFunction(FunctionDefinition.of("pack_local", 1, (args, from, count) -> args[from] * 10));
+        final Path path = dir.resolve("engine.pack");
+        ExpressionPack.write(path, Collections.singletonMap("local", engine.compile("pack_local(x) + 1", "x")));
+
+        assertEquals(31.0, ExpressionPack.load(path, engine).get("local").eval(3));
+        // the function is not registered globally
+        assertThrows(UnsupportedOperationException.class, () -> ExpressionPack.load(path).get("local"));
+
+        // nor bound to a global function of the same name registered later
+        Calculator.register(FunctionDefinition.of("pack_local", 1, (args, from, count) -> -args[from]));
+        assertEquals(31.0, ExpressionPack.load(path, engine).get("local").eval(3));
+        assertEquals(-2.0, ExpressionPack.load(path).get("local").eval(3));
+        assertEquals(-2.0, ExpressionPack.load(path, new CalculatorEngine()).get("local").eval(3));
+    }
+
+    @Test
+    public void testArrayVariables() throws IOException {
+        final CompiledExpression e = Calculator.compile("2*matmul(v, transpose(m)) - matmul(m, v) + [0, 1]", "m[2][3]", "v[3]");
+        final Path path = dir.resolve("arrays.pack");
+        ExpressionPack.write(path, Collections.singletonMap("product", e));
+        final CompiledExpression loaded = ExpressionPack.load(path).get("product");
+        assertArrayEquals(new int[] { 2 }, loaded.getShape());
+        final double[] values = { 1, 2, 3, 4, 5, 6, 1, 0, -1 };
+        assertArrayEquals(e.evalArray(values), loaded.evalArray(values));
+    }
+
+    @Test
+    public void testSharedVariables() throws IOException {
+        final VariableCalculator calc = new VariableCalculator("x = 2", "y = 3");
+        final Map<String, CompiledExpression> expressions = new LinkedHashMap<>();
+        expressions.put("q", calc.compile("x*y"));
+        final Path path = dir.resolve("queries.pack");
+        ExpressionPack.write(path, expressions);
+        final CompiledExpression loaded = ExpressionPack.load(path).get("q");
+        assertEquals(6.0, loaded.eval(2, 3));
+        // a loaded expression is not tied to a calculator
+        assertThrows(IllegalArgumentException.class, () -> calc.eval(loaded));
+    }
+
+    @Test
+    public void testCorruption() throws IOException {
+        final Map<String, CompiledExpression> expressions = new LinkedHashMap<>();
+        expressions.put("a", Calculator.compile("x+1", "x"));
+        final Path path = dir.resolve("a.pack");
+        ExpressionPack.write(path, expressions);
+        final byte[] bytes = Files.readAllBytes(path);
+
+        final byte[] flipped = bytes.clone();
+        flipped[flipped.length - 3] ^= 1;
+        assertThrows(IOException.class, () -> ExpressionPack.load(Files.write(dir.resolve("flipped.pack"), flipped)));
+        final byte[] version = bytes.clone();
+        version[7] = 99;
+        assertThrows(IOException.class, () -> ExpressionPack.load(Files.write(dir.resolve("version.pack"), version)));
+        assertThrows(IOException.class, () -> ExpressionPack.load(Files.write(dir.resolve("empty.pack"), new byte[0])));
+        assertThrows(IOException.class, () -> ExpressionPack.load(Files.write(dir.resolve("text.pack"), "x+1 and more text".getBytes())));
+    }
+
+    @Test
+    public void testMalformedExpression() throws IOException {
+        final Path path = dir.resolve("b.pack");
+        ExpressionPack.write(path, Collections.singletonMap("b", Calculator.compile("x+1", "x")));
+        // the nodes end with those of x, 1 and +, whose last byte is the operator
+        final byte[] bytes = Files.readAllBytes(path);
+        assertEquals(2.0, ExpressionPack.load(path).get("b").eval(1));
+
+        final byte[] operator = bytes.clone();
+        operator[operator.length - 1] = 99;
+        assertMalformed(operator);
+        final byte[] tag = bytes.clone();
+        tag[tag.length - 2] = 42;
+        assertMalformed(tag);
+        final byte[] count = bytes.clone();
+        count[count.length - 21] = 2;
+        assertMalformed(count);
+        assertMalformed(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    private void assertMalformed(final byte[] bytes) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 16, bytes.length - 16);
+        ByteBuffer.wrap(bytes).putInt(12, (int) crc.getValue());
+        final ExpressionPack pack = ExpressionPack.load(Files.write(dir.resolve("malformed.pack"), bytes));
+        assertThrows(UncheckedIOException.class, () -> pack.get("b"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.keon.projects.calculator;
+
+import static com.keon.projects.calculator.logic.Calculator.eval;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.FunctionDefinition;
+
+public class FunctionRegistryTest {
+
+    @Test
+    public void testServiceLoader() {
+        assertEquals(5.0, eval("hypot(3, 4)"));
+        assertEquals(0.0, eval("sumsq()"));
+        assertEquals(14.0, eval("sumsq(1, 2, 3)"));
+        assertThrows(RuntimeException.class, () -> eval("hypot(3)"));
+    }
+
+    @Test
+    public void testBrokenProviders() {
+        // the providers listed before TestFunctionProvider fail to load, fail to provide functions, or redefine sin
+        assertEquals(0.0, eval("sin(0)"));
+        assertEquals(1.0, eval("sin('pi'/2)"));
+        assertEquals(6.0, eval("tripled(2)"));
+        assertEquals(5.0, eval("hypot(3, 4)"));
+    }
+
+    @Test
+    public void testRegister() {
+        Calculator.register(FunctionDefinition.of("clamp", 3, (args, from, count) -> Math.max(args[from + 1], Math.min(args[from + 2], args[from]))));
+        assertEquals(1.0, eval("clamp(5, 0, 1)"));
+        final CompiledExpression e = Calculator.compile("clamp(x, -1, 1) * 2", "x");
+        assertEquals(-2.0, e.eval(-3));
+        assertEquals(1.0, e.jit().eval(0.5));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.register(FunctionDefinition.of("clamp", 1, (args, from, count) -> 0)));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.register(FunctionDefinition.of("sin", 1, (args, from, count) -> 0)));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.register(FunctionDefinition.of("2x", 1, (args, from, count) -> 0)));
+        assertThrows(IllegalArgumentException.class, () -> FunctionDefinition.of("f", 2, (args, from, count) -> 0).withMaxArgs(1));
+    }
+
+    @Test
+    public void testPurity() {
+        final AtomicInteger pureCalls = new AtomicInteger();
+        final AtomicInteger impureCalls = new AtomicInteger();
+        Calculator.register(FunctionDefinition.of("pure_twice", 1, (args, from, count) -> {
+            pureCalls.incrementAndGet();
+            return 2 * args[from];
+        }));
+        Calculator.register(FunctionDefinition.of("counter", 0, (args, from, count) -> impureCalls.incrementAndGet()).impure());
+        final CompiledExpression e = Calculator.compile("pure_twice(3) + counter() + x", "x");
+        assertEquals(1, pureCalls.get());
+        assertEquals(0, impureCalls.get());
+        assertEquals(7.0, e.eval(0));
+        assertEquals(8.0, e.eval(0));
+        assertEquals(1, pureCalls.get());
+        assertThrows(IllegalArgumentException.class,
+                () -> Calculator.register(FunctionDefinition.of("random_memo", 0, (args, from, count) -> Math.random()).impure().withMemoization(16)));
+    }
+
+    @Test
+    public void testMemoization() {
+        final AtomicInteger calls = new AtomicInteger();
+        Calculator.register(FunctionDefinition.of("slow_lookup", 2, (args, from, count) -> {
+            calls.incrementAndGet();
+            return args[from] * 10 + args[from + 1];
+        }).withMemoization(64));
+        final CompiledExpression e = Calculator.compile("slow_lookup(x, y)", "x", "y");
+        final double[][] columns = new double[2][1000];
+        for (int i = 0; i < 1000; ++i) {
+            columns[0][i] = i % 4;
+            columns[1][i] = i % 2;
+        }
+        final double[] out = new double[1000];
+        e.evalBatch(columns, out);
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(columns[0][i] * 10 + columns[1][i], out[i]);
+        }
+        // once per distinct pair of arguments
+        assertEquals(4, calls.get());
+        assertEquals(Double.NaN, e.eval(Double.NaN, 1));
+        final int before = calls.get();
+        assertEquals(Double.NaN, e.eval(Double.NaN, 1));
+        assertEquals(-1.0, e.eval(0, -1));
+        assertEquals(-1.0, e.eval(-0.0, -1));
+        assertEquals(before + 2, calls.get());
+    }
+}
@@ -0,0 +1,64 @@
+package com.keon.projects.calculator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.Gradient;
+
+public class GradientTest {
+
+    private static final String[] EXPRESSIONS = {
+            "x*y + 2*x - sin(x)*cos(y) + (x+1)^2 / (y+3)",
+            "exp(x/y) - ln(x*y) + sqrt(x+y) + tan(x/4)",
+            "x^y + y^2.5 + 2^x",
+            "x/^3 + (0-x)/^3 + y/^x",
+            "avg(x, y, x*y, 3) + min(x, y) * max(x, 2*y)",
+            "x % y + if(x < y, x^2, y^3) + coalesce(ln(x-3), y)" };
+
+    @Test
+    public void testAgainstFiniteDifferences() {
+        final double[][] points = { { 1.3, 2.1 }, { 2.6, 0.9 }, { 4.2, 3.3 } };
+        for (final String exp : EXPRESSIONS) {
+            final CompiledExpression e = Calculator.compile(exp, "x", "y");
+            final Gradient gradient = e.gradient();
+            for (final double[] p : points) {
+                final double[] g = new double[2];
+                assertEquals(e.eval(p), gradient.eval(p, g), exp);
+                for (int k = 0; k < 2; ++k) {
+                    final double h = 1e-6;
+                    final double[] up = p.clone();
+                    final double[] down = p.clone();
+                    up[k] += h;
+                    down[k] -= h;
+                    final double expected = (e.eval(up) - e.eval(down)) / (2 * h);
+                    assertEquals(expected, g[k], 1e-5 * Math.max(1, Math.abs(expected)), exp + " d/d" + e.getVariables()[k] + " at (" + p[0] + ", " + p[1] + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testChosenVariables() {
+        final CompiledExpression e = Calculator.compile("a*b*c + b^2", "a", "b", "c");
+        final Gradient gradient = e.gradient("c", "b");
+        assertArrayEquals(new String[] { "c", "b" }, gradient.getVariables());
+        final double[] g = new double[2];
+        assertEquals(2 * 3 * 4 + 9.0, gradient.eval(new double[] { 2, 3, 4 }, g));
+        assertArrayEquals(new double[] { 6, 8 + 6 }, g);
+        assertThrows(IllegalArgumentException.class, () -> e.gradient("d"));
+    }
+
+    @Test
+    public void testConstantExponentOfNegativeBase() {
+        final double[] g = new double[1];
+        assertEquals(-8.0, Calculator.compile("x^3", "x").gradient().eval(new double[] { -2 }, g));
+        assertEquals(12.0, g[0]);
+        Calculator.compile("x/^3", "x").gradient().eval(new double[] { -8 }, g);
+        assertEquals(1 / 12.0, g[0], 1e-15);
+    }
+}
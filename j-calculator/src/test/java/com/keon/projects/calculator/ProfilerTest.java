@@ -0,0 +1,123 @@
+package com.keon.projects.calculator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CalculatorEngine;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.Profiler;
+
+public class ProfilerTest {
+
+    @Test
+    public void testCounts() {
+        final Profiler profiler = new Profiler();
+        final CompiledExpression e = Calculator.compile("sin(x)*y + if(x > y, sqrt(x), y^2) + sum(i, 1, 10, cos(i*x))", "x", "y");
+        final CompiledExpression profiled = e.profile(profiler);
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(e.eval(i, 50), profiled.eval(i, 50));
+        }
+        assertSame(profiled, profiled.jit());
+        assertEquals(100, profiler.getEvalCount());
+        assertEquals(0, profiler.getParseCount());
+        assertTrue(profiler.getEvalNanos() > 0);
+
+        final Map<String, Long> calls = profiler.getFunctionCalls();
+        assertEquals(100L, calls.get("sin"));
+        assertEquals(100L, calls.get("if"));
+        assertEquals(49L, calls.get("sqrt"));
+        assertEquals(100L, calls.get("sum"));
+        assertEquals(1000L, calls.get("cos"));
+
+        final String report = profiler.getReport();
+        assertTrue(report.contains("evaluated 100 times"), report);
+        assertTrue(report.contains("cos(i*x)"), report);
+
+        profiler.reset();
+        assertEquals(0, profiler.getEvalCount());
+        assertEquals(0L, profiler.getFunctionCalls().get("cos"));
+        profiled.eval(1, 2);
+        assertEquals(10L, profiler.getFunctionCalls().get("cos"));
+    }
+
+    @Test
+    public void testBatch() {
+        final Profiler profiler = new Profiler();
+        final CompiledExpression e = Calculator.compile("x*y + 1", "x", "y").profile(profiler);
+        final double[] out = new double[3];
+        e.evalBatch(new double[][] { { 1, 2, 3 }, { 4, 5, 6 } }, out);
+        assertEquals(5.0, out[0]);
+        assertEquals(19.0, out[2]);
+        assertEquals(3, profiler.getEvalCount());
+    }
+
+    @Test
+    public void testEngine() {
+        final Profiler profiler = new Profiler();
+        final CalculatorEngine engine = new CalculatorEngine().withProfiler(profiler);
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(3.0, engine.eval("1 + 2"));
+            assertEquals(4.0, engine.eval("sqrt(16)"));
+        }
+        final CompiledExpression e = engine.compile("max(a, b)", "a", "b");
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(3.0, e.eval(2, 3));
+        }
+        assertEquals(3, profiler.getParseCount());
+        assertEquals(15, profiler.getEvalCount());
+        assertTrue(profiler.getParseNanos() > 0);
+        assertEquals(5L, profiler.getFunctionCalls().get("max"));
+
+        // engines without a profiler record nothing
+        new CalculatorEngine().compile("max(a, b)", "a", "b").eval(2, 3);
+        assertEquals(5L, profiler.getFunctionCalls().get("max"));
+    }
+
+    @Test
+    public void testRetentionIsBounded() throws InterruptedException {
+        final Profiler profiler = new Profiler();
+        final CalculatorEngine engine = new CalculatorEngine().withCacheSize(16).withProfiler(profiler);
+        final CompiledExpression kept = engine.compile("x*3", "x");
+        for (int i = 0; i < 5000; ++i) {
+            assertEquals(2.0 + i, engine.compile("sqrt(x) + " + i, "x").eval(4));
+            assertEquals(i + 1.0, engine.eval(i + " + 1"));
+        }
+        // the expressions neither referenced nor cached are dropped
+        for (int attempt = 0; attempt < 100 && profiler.getExpressionCount() > 17; ++attempt) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(profiler.getExpressionCount() <= 17, "retained " + profiler.getExpressionCount());
+        assertEquals(10000, profiler.getEvalCount());
+        assertEquals(5000L, profiler.getFunctionCalls().get("sqrt"));
+
+        assertEquals(6.0, kept.eval(2));
+        assertTrue(profiler.getReport().contains("[x*3]"), profiler.getReport());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        final Profiler profiler = new Profiler();
+        Calculator.compile("x + 1", "x").profile(profiler).eval(1);
+        final ObjectName name = profiler.registerMBean("test");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(1L, server.getAttribute(name, "EvalCount"));
+            assertTrue(((String) server.getAttribute(name, "Report")).contains("x+1"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "EvalCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
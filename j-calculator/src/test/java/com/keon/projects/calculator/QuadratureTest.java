@@ -0,0 +1,111 @@
+package com.keon.projects.calculator;
+
+import static com.keon.projects.calculator.logic.Calculator.eval;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.junit.jupiter.api.Test;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.FunctionDefinition;
+import com.keon.projects.calculator.logic.VariableCalculator;
+
+public class QuadratureTest {
+
+    @Test
+    public void testIntegrate() {
+        assertEquals(1.0 / 3, eval("integrate(x^2, x, 0, 1)"), 1e-12);
+        assertEquals(2.0, eval("integrate(sin(x), x, 0, 'pi')"), 1e-10);
+        assertEquals(2.0 / 13, eval("integrate(x^12, x, -1, 1)"), 1e-14);
+        assertEquals(-0.5, eval("integrate(x, x, 1, 0)"), 1e-14);
+        assertEquals(0.0, eval("integrate(x, x, 2, 2)"));
+        assertEquals(Math.PI, eval("4*integrate(1/(1+t^2), t, 0, 1)"), 1e-12);
+        // a step is refined until the tolerance is met
+        assertEquals(0.7, eval("integrate(if(x<0.3, 0, 1), x, -0.7, 1)"), 1e-9);
+        assertEquals(2.0, eval("integrate(sqrt(x), x, 0, 1, 0.001)*3"), 1e-3);
+    }
+
+    @Test
+    public void testNestedIntegrals() {
+        assertEquals(0.25, eval("integrate(integrate(x*y, y, 0, 1), x, 0, 1)"), 1e-12);
+        // the inner bounds may refer to the outer variable
+        assertEquals(1.0 / 6, eval("integrate(integrate(1, y, 0, x), x, 0, 1) - 1/3"), 1e-12);
+    }
+
+    @Test
+    public void testSum() {
+        assertEquals(5050.0, eval("sum(i, 1, 100, i)"));
+        assertEquals(0.0, eval("sum(i, 1, 0, i)"));
+        assertEquals(6.0, eval("sum(i, 1, 3.5, i)"));
+        assertEquals(Math.PI * Math.PI / 6, eval("sum(k, 1, 1000000, 1/k^2)"), 1e-6);
+        assertEquals(2.0 * 1000000, eval("sum(i, 1, 1000000, 2)"));
+        assertEquals(36.0, eval("sum(i, 1, 3, sum(j, 1, 3, i*j))"));
+    }
+
+    @Test
+    public void testSumRunsInCallingPool() throws InterruptedException, ExecutionException {
+        final Set<ForkJoinPool> pools = ConcurrentHashMap.newKeySet();
+        Calculator.register(FunctionDefinition.of("quad_pool", 1, (args, from, count) -> {
+            pools.add(ForkJoinTask.getPool());
+            return args[from];
+        }).impure());
+        final CompiledExpression e = Calculator.compile("sum(i, 1, 1000000, quad_pool(i))");
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertEquals(500000500000.0, pool.submit(() -> e.eval()).get());
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(Collections.singleton(pool), pools);
+    }
+
+    @Test
+    public void testSumBounds() {
+        final CompiledExpression e = Calculator.compile("sum(k, a, b, 1)", "a", "b");
+        assertThrows(IllegalArgumentException.class, () -> e.eval(1, 1e30));
+        assertThrows(IllegalArgumentException.class, () -> e.eval(1, Double.POSITIVE_INFINITY));
+        assertThrows(IllegalArgumentException.class, () -> e.eval(Double.NEGATIVE_INFINITY, 1));
+        assertThrows(IllegalArgumentException.class, () -> e.eval(-1e17, 1e17));
+        assertThrows(RuntimeException.class, () -> eval("sum(k, 1, 1e30, 1/k^2)"));
+        assertEquals(0.0, e.eval(Double.POSITIVE_INFINITY, 1));
+        assertTrue(Double.isNaN(e.eval(Double.NaN, 1)));
+    }
+
+    @Test
+    public void testBoundVariables() {
+        final CompiledExpression e = Calculator.compile("sum(i, 1, n, i*a) + integrate(a*x, x, 0, 1) + i", "a", "n", "i");
+        assertEquals(2 * 10 + 1 + 100, e.eval(2, 4, 100), 1e-12);
+        assertEquals(e.eval(2, 4, 100), e.jit().eval(2, 4, 100));
+        final double[] out = new double[2];
+        e.evalBatch(new double[][] { { 2, 1 }, { 4, 3 }, { 100, 0 } }, out);
+        assertEquals(121.0, out[0], 1e-12);
+        assertEquals(6.5, out[1], 1e-12);
+
+        final VariableCalculator calc = new VariableCalculator("n = 3", "t = sum(k, 1, n, k)");
+        assertEquals(6.0, calc.get("t"));
+        calc.set("n", 4);
+        assertEquals(10.0, calc.get("t"));
+    }
+
+    @Test
+    public void testErrors() {
+        assertThrows(RuntimeException.class, () -> eval("integrate(x, x, 0)"));
+        assertThrows(RuntimeException.class, () -> eval("integrate(x, x, 0, 1, 1, 1)"));
+        assertThrows(RuntimeException.class, () -> eval("sum(i, 1, 2)"));
+        assertThrows(RuntimeException.class, () -> eval("sum(2, 1, 2, 3)"));
+        assertThrows(RuntimeException.class, () -> eval("sum(i+1, 1, 2, i)"));
+        // the bound variable is not visible in the bounds
+        assertThrows(RuntimeException.class, () -> eval("sum(i, 1, i, i)"));
+        assertThrows(RuntimeException.class, () -> eval("i+sum(i, 1, 2, i)"));
+        assertThrows(UnsupportedOperationException.class, () -> Calculator.compile("integrate(x*y, y, 0, 1)", "x").gradient());
+    }
+}
@@ -0,0 +1,25 @@
+package com.keon.projects.calculator;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.keon.projects.calculator.logic.FunctionDefinition;
+import com.keon.projects.calculator.logic.FunctionProvider;
+
+/**
+ * Discovered by the calculator through META-INF/services
+ */
+public class TestFunctionProvider implements FunctionProvider {
+
+    @Override
+    public Collection<FunctionDefinition> functions() {
+        return Arrays.asList(FunctionDefinition.of("hypot", 2, (args, from, count) -> Math.hypot(args[from], args[from + 1])),
+                FunctionDefinition.of("sumsq", 0, (args, from, count) -> {
+                    double sum = 0;
+                    for (int i = from; i < from + count; ++i) {
+                        sum += args[i] * args[i];
+                    }
+                    return sum;
+                }).withMaxArgs(Integer.MAX_VALUE));
+    }
+}
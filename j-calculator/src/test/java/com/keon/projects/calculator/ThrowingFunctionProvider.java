@@ -0,0 +1,18 @@
+package com.keon.projects.calculator;
+
+import java.util.Collection;
+
+import com.keon.projects.calculator.logic.FunctionDefinition;
+import com.keon.projects.calculator.logic.FunctionProvider;
+
+/**
+ * Discovered by the calculator through META-INF/services, before {@link TestFunctionProvider}, and fails to provide
+ * its functions
+ */
+public class ThrowingFunctionProvider implements FunctionProvider {
+
+    @Override
+    public Collection<FunctionDefinition> functions() {
+        throw new IllegalStateException("Not configured");
+    }
+}
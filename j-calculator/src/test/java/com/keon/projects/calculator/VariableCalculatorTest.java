@@ -0,0 +1,223 @@
+package com.keon.projects.calculator;
+
+import com.keon.projects.calculator.logic.Calculator;
+import com.keon.projects.calculator.logic.CompiledExpression;
+import com.keon.projects.calculator.logic.FunctionDefinition;
+import com.keon.projects.calculator.logic.Parallelism;
+import com.keon.projects.calculator.logic.Solver;
+import com.keon.projects.calculator.logic.VariableCalculator;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class VariableCalculatorTest {
+
+    @Test
+    public void testDefinitions() {
+        final VariableCalculator calc = new VariableCalculator("x=y+2", " y = z^2 ", "z=2");
+        assertEquals(4.0, calc.get("y"));
+        assertEquals(6.0, calc.get("x"));
+        assertEquals(12.0, calc.eval("x*z"));
+        assertEquals(12.0, calc.eval("x*z"));
+    }
+
+    @Test
+    public void testEvalIsCached() {
+        final VariableCalculator calc = new VariableCalculator("x = 2", "y = x*3");
+        assertEquals(8.0, calc.eval("x + y"));
+        assertEquals(8.0, calc.eval(" x+y "));
+        assertEquals(1, calc.getCache().missCount());
+        assertEquals(1, calc.getCache().hitCount());
+        calc.set("x", 1);
+        assertEquals(4.0, calc.eval("x + y"));
+        assertEquals(2, calc.getCache().hitCount());
+        assertEquals(1, calc.getCache().size());
+    }
+
+    @Test
+    public void testNoDefinitions() {
+        assertEquals(3.0, new VariableCalculator().eval("1+2"));
+        assertEquals(0.0, new VariableCalculator().eval(" "));
+    }
+
+    @Test
+    public void testSetRecomputesDependents() {
+        final VariableCalculator calc = new VariableCalculator("x=y+2", "y=z^2", "z=2", "w=z*10", "u=5");
+        calc.set("z", 3.0);
+        assertEquals(9.0, calc.get("y"));
+        assertEquals(11.0, calc.get("x"));
+        assertEquals(30.0, calc.get("w"));
+        assertEquals(5.0, calc.get("u"));
+        calc.set("y", 1.0);
+        assertEquals(3.0, calc.get("x"));
+        calc.set("z", 4.0);
+        assertEquals(1.0, calc.get("y"));
+        assertEquals(3.0, calc.get("x"));
+        assertEquals(40.0, calc.get("w"));
+    }
+
+    @Test
+    public void testDiamond() {
+        final VariableCalculator calc = new VariableCalculator("d=b+c", "b=a*2", "c=a*3", "a=1");
+        assertEquals(5.0, calc.get("d"));
+        calc.set("a", 2);
+        assertEquals(10.0, calc.get("d"));
+    }
+
+    @Test
+    public void testCycles() {
+        assertThrows(RuntimeException.class, () -> new VariableCalculator("x=y+1", "y=x+1"));
+        assertThrows(RuntimeException.class, () -> new VariableCalculator("x=x+1"));
+    }
+
+    @Test
+    public void testUndefined() {
+        final VariableCalculator calc = new VariableCalculator("x=1");
+        assertThrows(IllegalArgumentException.class, () -> calc.set("y", 1));
+        assertThrows(RuntimeException.class, () -> calc.eval("x+y"));
+    }
+
+    @Test
+    public void testOverlappingNames() {
+        final VariableCalculator calc = new VariableCalculator("x=2", "xx=x*10", "x_1=xx+x", "_x=x_1-xx");
+        assertEquals(20.0, calc.get("xx"));
+        assertEquals(22.0, calc.get("x_1"));
+        assertEquals(2.0, calc.get("_x"));
+        assertEquals(44.0, calc.eval("xx+x_1+x"));
+    }
+
+    @Test
+    public void testBadNames() {
+        assertThrows(IllegalArgumentException.class, () -> new VariableCalculator("1x=2"));
+        assertThrows(IllegalArgumentException.class, () -> new VariableCalculator("x y=2"));
+        assertThrows(IllegalArgumentException.class, () -> new VariableCalculator("x=1", "x=2"));
+    }
+
+    @Test
+    public void testCompiledQuery() {
+        final VariableCalculator calc = new VariableCalculator("x=y+2", "y=3");
+        final CompiledExpression query = calc.compile("x*y");
+        assertEquals(15.0, calc.eval(query));
+        calc.set("y", 4);
+        assertEquals(24.0, calc.eval(query));
+        assertThrows(IllegalArgumentException.class, () -> new VariableCalculator("x=1", "y=2").eval(query));
+    }
+
+    @Test
+    public void testSolveCycle() {
+        // x = (x^2 - 3)/2 + 1, i.e. x^2 - 2x - 1 = 0, and Newton from 0 finds the root 1 - sqrt(2)
+        final VariableCalculator calc = new VariableCalculator(new Solver(), "x = y/2 + 1", "y = x^2 - 3", "z = x + y", "w = 7");
+        final double x = calc.get("x");
+        assertEquals(x, calc.get("y") / 2 + 1, 1e-12);
+        assertEquals(calc.get("y"), x * x - 3, 1e-12);
+        assertEquals(1 - Math.sqrt(2), x, 1e-12);
+        assertEquals(x + calc.get("y"), calc.get("z"), 1e-12);
+        assertEquals(7.0, calc.get("w"));
+    }
+
+    @Test
+    public void testSolveSelfReference() {
+        final VariableCalculator calc = new VariableCalculator(new Solver(), "x = cos(x)", "a = 2", "y = a*x + if(x > 0, 1, 2)");
+        assertEquals(0.7390851332151607, calc.get("x"), 1e-12);
+        assertEquals(2 * 0.7390851332151607 + 1, calc.get("y"), 1e-12);
+    }
+
+    @Test
+    public void testSolveLinearSystemAfterSet() {
+        final VariableCalculator calc = new VariableCalculator(new Solver(), "a = 1", "x = (a - y) / 2", "y = (5 - x) / 3", "s = x + y");
+        // 2x + y = a, x + 3y = 5
+        assertEquals(-0.4, calc.get("x"), 1e-12);
+        assertEquals(1.8, calc.get("y"), 1e-12);
+        calc.set("a", 6);
+        assertEquals(2.6, calc.get("x"), 1e-12);
+        assertEquals(0.8, calc.get("y"), 1e-12);
+        assertEquals(3.4, calc.get("s"), 1e-12);
+        calc.set("y", 2);
+        assertEquals(2.0, calc.get("x"), 1e-12);
+        assertEquals(4.0, calc.get("s"), 1e-12);
+    }
+
+    @Test
+    public void testNoSolution() {
+        assertThrows(RuntimeException.class, () -> new VariableCalculator(new Solver().withMaxIterations(20), "x = x + 1"));
+    }
+
+    @Test
+    public void testSharedSubexpressions() {
+        final AtomicInteger calls = new AtomicInteger();
+        Calculator.register(FunctionDefinition.of("shared_probe", 1, (args, from, count) -> {
+            calls.incrementAndGet();
+            return Math.exp(args[from]);
+        }));
+        final VariableCalculator calc = new VariableCalculator("a = shared_probe(x*y)+1", "b = shared_probe(y*x)*2", "x = 1", "y = 2",
+                "c = a + b + shared_probe(x*y)");
+        assertEquals(1, calls.get());
+        assertEquals(Math.exp(2) + 1, calc.get("a"));
+        assertEquals(Math.exp(2) * 2, calc.get("b"));
+        assertEquals(Math.exp(2) * 4 + 1, calc.get("c"));
+        calc.set("x", 0);
+        assertEquals(2, calls.get());
+        assertEquals(2.0, calc.get("a"));
+        assertEquals(5.0, calc.get("c"));
+        assertEquals(5.0, calc.eval("c"));
+        assertEquals(7.0, calc.eval(calc.compile("a+c")));
+        assertThrows(IllegalArgumentException.class, () -> calc.get("$0"));
+    }
+
+    @Test
+    public void testSolveWithSharedSubexpressions() {
+        final VariableCalculator calc = new VariableCalculator(new Solver(), "x = exp(-x*y)/2", "y = exp(-x*y)/2 + 0.5");
+        assertEquals(calc.get("x"), Math.exp(-calc.get("x") * calc.get("y")) / 2, 1e-12);
+        assertEquals(calc.get("y"), calc.get("x") + 0.5, 1e-12);
+    }
+
+    @Test
+    public void testParallelLevels() {
+        // a wide model: 500 independent definitions, 500 depending on pairs of them, a sum of all and a cycle
+        final int n = 500;
+        final String[] defs = new String[2 * n + 4];
+        final StringBuilder total = new StringBuilder("total = 0");
+        for (int i = 0; i < n; ++i) {
+            defs[i] = "a" + i + " = sin(x*" + i + ")";
+            defs[n + i] = "b" + i + " = a" + i + " * a" + (n - 1 - i) + " + y";
+            total.append("+b").append(i);
+        }
+        defs[2 * n] = total.toString();
+        defs[2 * n + 1] = "x = 0.5";
+        defs[2 * n + 2] = "y = z/2 + 1";
+        defs[2 * n + 3] = "z = y/2";
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final VariableCalculator sequential = new VariableCalculator(new Solver(), defs);
+            final VariableCalculator parallel = new VariableCalculator(new Solver(),
+                    new Parallelism(pool).withThreshold(16).withDefinitionsPerTask(8), defs);
+            assertEquals(sequential.get("total"), parallel.get("total"));
+            assertEquals(4.0 / 3, parallel.get("y"), 1e-12);
+            parallel.set("x", 0.25);
+            sequential.set("x", 0.25);
+            assertEquals(sequential.get("total"), parallel.get("total"));
+            assertEquals(sequential.get("b7"), parallel.get("b7"));
+            parallel.set("z", 1);
+            assertEquals(1.5, parallel.get("y"));
+            double expected = 0;
+            for (int i = 0; i < n; ++i) {
+                expected += Math.sin(0.25 * i) * Math.sin(0.25 * (n - 1 - i)) + 1.5;
+            }
+            assertEquals(expected, parallel.get("total"), 1e-9);
+            assertThrows(RuntimeException.class, () -> new VariableCalculator(null, new Parallelism(pool), "p = q", "q = p"));
+
+            final Parallelism defaults = new Parallelism(pool);
+            final Parallelism tuned = defaults.withThreshold(16).withDefinitionsPerTask(8);
+            assertEquals(256, defaults.getThreshold());
+            assertEquals(32, defaults.getDefinitionsPerTask());
+            assertEquals(16, tuned.getThreshold());
+            assertEquals(8, tuned.getDefinitionsPerTask());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.keon.projects.calculator.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class CommonSubexpressionsTest {
+
+    /**
+     * @return the eliminated expressions, followed by the definitions of the shared subexpressions
+     */
+    private static String eliminate(final String[] vars, final String... exps) {
+        final SymbolTable symbols = new SymbolTable(vars);
+        final Node[] roots = new Node[exps.length];
+        for (int i = 0; i < exps.length; ++i) {
+            roots[i] = Calculator.compile(exps[i], symbols).getRoot();
+        }
+        return Arrays.toString(CommonSubexpressions.eliminate(roots, vars.length));
+    }
+
+    @Test
+    public void testAcrossExpressions() {
+        final String[] vars = { "x", "y" };
+        assertEquals("[($0+1.0), ($0*2.0), exp((x*y))]", eliminate(vars, "exp(x*y)+1", "exp(y*x)*2"));
+        // a shared subtree counts once towards its own subtrees
+        assertEquals("[($0+$1), ($0*2.0), ($1-1.0), exp((x*y)), sin((x*y))]",
+                eliminate(vars, "exp(x*y)+sin(x*y)", "exp(x*y)*2", "sin(x*y)-1"));
+        assertEquals("[ln(x), ln(x)]", eliminate(vars, "ln(x)", "ln(x)"));
+        assertEquals("[$0, $0, $0, ln(x)]", eliminate(vars, "ln(x)", "ln(x)", "ln(x)"));
+    }
+
+    @Test
+    public void testWithinExpression() {
+        assertEquals("[(($0*$0)+$0), ((x+1.0)^y)]", eliminate(new String[] { "x", "y" }, "(x+1)^y*(x+1)^y+(x+1)^y"));
+    }
+
+    @Test
+    public void testCheapAndUnshareable() {
+        final String[] vars = { "x", "y" };
+        // cheaper to recompute than to store
+        assertEquals("[((x*y)+1.0), ((x*y)*2.0)]", eliminate(vars, "x*y+1", "x*y*2"));
+        // lazily evaluated and bound subtrees are not shared, but whole calls are
+        assertEquals("[if(x,exp(y),0.0), (if(x,0.0,exp(y))+1.0)]", eliminate(vars, "if(x, exp(y), 0)", "if(x, 0, exp(y))+1"));
+        assertEquals("[($0+1.0), ($0*2.0), sum(i,1.0,x,exp(i))]", eliminate(vars, "sum(i, 1, x, exp(i))+1", "2*sum(k, 1, x, exp(k))"));
+        // impure functions are evaluated at every call
+        Calculator.register(FunctionDefinition.of("cse_random", 0, (args, from, count) -> Math.random()).impure());
+        assertEquals("[(exp(cse_random())+1.0), (exp(cse_random())*2.0)]", eliminate(vars, "exp(cse_random())+1", "exp(cse_random())*2"));
+    }
+}
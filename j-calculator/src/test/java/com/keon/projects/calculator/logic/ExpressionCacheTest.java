@@ -0,0 +1,47 @@
+package com.keon.projects.calculator.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class ExpressionCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        final ExpressionCache cache = new ExpressionCache(10);
+        final CompiledExpression e = cache.get("1+2", n -> Calculator.compile(n));
+        assertSame(e, cache.get("1+2", n -> Calculator.compile(n)));
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        final ExpressionCache cache = new ExpressionCache(2);
+        for (int i = 0; i < 5; ++i) {
+            cache.get(Integer.toString(i), n -> Calculator.compile(n));
+        }
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.evictionCount());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        final ExpressionCache cache = new ExpressionCache(2);
+        assertThrows(UnbalancedParanthesisException.class, () -> cache.get("(1", n -> Calculator.compile(n)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvalUsesNormalizedKey() {
+        final ExpressionCache cache = Calculator.getCache();
+        final String exp = "1 + 'pi' * " + System.nanoTime();
+        final long hits = cache.hitCount();
+        Calculator.eval(exp);
+        Calculator.eval(exp.replace(" ", ""));
+        assertEquals(hits + 1, cache.hitCount());
+    }
+}
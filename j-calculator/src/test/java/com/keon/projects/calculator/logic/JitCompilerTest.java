@@ -0,0 +1,25 @@
+package com.keon.projects.calculator.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class JitCompilerTest {
+
+    @Test
+    public void testEqualProgramsShareAClass() {
+        final int before = JitCompiler.classCount();
+        final CompiledExpression a = Calculator.compile("x*3.25 + sin(y) + norm(x, y)", "x", "y").jit();
+        final CompiledExpression b = Calculator.compile("x*3.25 + sin(y) + norm(x, y)", "x", "y").jit();
+        assertEquals(before + 1, JitCompiler.classCount());
+        assertEquals(a.eval(1, 2), b.eval(1, 2));
+
+        // the same code calling the functions of other engines is another class
+        final CalculatorEngine twice = new CalculatorEngine().withFunction(FunctionDefinition.of("jit_f", 1, (args, from, count) -> 2 * args[from]));
+        final CalculatorEngine thrice = new CalculatorEngine().withFunction(FunctionDefinition.of("jit_f", 1, (args, from, count) -> 3 * args[from]));
+        assertEquals(4.0, twice.compile("jit_f(x)", "x").jit().eval(2));
+        assertEquals(6.0, thrice.compile("jit_f(x)", "x").jit().eval(2));
+        assertEquals(4.0, twice.compile("jit_f(x)", "x").jit().eval(2));
+        assertEquals(before + 3, JitCompiler.classCount());
+    }
+}
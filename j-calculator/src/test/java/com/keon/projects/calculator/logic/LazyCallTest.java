@@ -0,0 +1,33 @@
+package com.keon.projects.calculator.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class LazyCallTest {
+
+    @Test
+    public void testOnlyTakenBranchIsEvaluated() {
+        final AtomicInteger calls = new AtomicInteger();
+        final Node expensive = new Node.Call("expensive", Ifunction.unary(x -> {
+            calls.incrementAndGet();
+            return x * 2;
+        }), new Node[] { new Node.Variable("x", 0) });
+        final Node tree = new Node.LazyCall("if", Function.get("if"), new Node[] {
+                new Node.Binary(Operator.LESS, new Node.Variable("x", 0), new Node.Constant(0)), new Node.Constant(-1), expensive });
+        final Program program = Program.of(tree);
+        assertEquals(-1.0, program.eval(new double[] { -5 }));
+        assertEquals(0, calls.get());
+        assertEquals(10.0, program.eval(new double[] { 5 }));
+        assertEquals(1, calls.get());
+        assertEquals(0, program.variableSlots()[0]);
+    }
+
+    @Test
+    public void testConstantConditionIsFolded() {
+        assertEquals("x", Calculator.compile("if(2>1, x, y)", "x", "y").getRoot().toString());
+        assertEquals("if((x<1.0),x,y)", Calculator.compile("if(x<0+1, x, y)", "x", "y").getRoot().toString());
+    }
+}
@@ -0,0 +1,83 @@
+package com.keon.projects.calculator.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class OptimizerTest {
+
+    private static String optimize(final String exp, final String... vars) {
+        return Calculator.compile(exp, vars).getRoot().toString();
+    }
+
+    @Test
+    public void testFolding() {
+        assertEquals(Double.toString(Math.PI * 2), optimize("'pi'*2"));
+        assertEquals("4.0", optimize("sqrt(16)"));
+        assertEquals("(x*5.0)", optimize("x*(2+3)", "x"));
+        assertEquals("(sin(x)+1.0)", optimize("sin(x)+avg(1,1)", "x"));
+    }
+
+    @Test
+    public void testIdentities() {
+        assertEquals("x", optimize("x*1+0", "x"));
+        assertEquals("x", optimize("1*(0+x)-0", "x"));
+        assertEquals("x", optimize("x^1/1", "x"));
+        assertEquals("1.0", optimize("(x+y)^0", "x", "y"));
+        assertEquals("(0.0-x)", optimize("-x", "x"));
+    }
+
+    @Test
+    public void testStrengthReduction() {
+        assertEquals("(x*x)", optimize("x^2", "x"));
+        // pow and sqrt differ at -Infinity and -0.0
+        assertEquals("(x^0.5)", optimize("x^0.5", "x"));
+        assertEquals(Double.POSITIVE_INFINITY, Calculator.compile("x^0.5", "x").eval(Double.NEGATIVE_INFINITY));
+        assertEquals(0.0, Calculator.compile("x^0.5", "x").eval(-0.0));
+        assertEquals("((x+y)^2.0)", optimize("(x+y)^2", "x", "y"));
+    }
+
+    @Test
+    public void testCommutativeOrder() {
+        assertEquals("(x+2.0)", optimize("2+x", "x"));
+        assertEquals("(x*y)", optimize("y*x", "x", "y"));
+        assertEquals("(sin(y)*x)", optimize("x*sin(y)", "x", "y"));
+        assertEquals("(2.0-x)", optimize("2-x", "x"));
+    }
+
+    @Test
+    public void testImpureCallsKeepTheirOrder() {
+        final List<Double> calls = new ArrayList<>();
+        Calculator.register(FunctionDefinition.of("opt_record", 1, (args, from, count) -> {
+            calls.add(args[from]);
+            return args[from];
+        }).impure());
+        assertEquals("(x+opt_record(1.0))", optimize("x+opt_record(1)", "x"));
+        assertEquals("(opt_record(1.0)+(2.0*opt_record(2.0)))", optimize("opt_record(1)+2*opt_record(2)"));
+
+        assertEquals(5.0, Calculator.compile("opt_record(1)+2*opt_record(2)").eval());
+        assertEquals(Arrays.asList(1.0, 2.0), calls);
+        calls.clear();
+        assertEquals(7.0, Calculator.compile("x*opt_record(3)+opt_record(4)", "x").eval(1));
+        assertEquals(Arrays.asList(3.0, 4.0), calls);
+        calls.clear();
+        // nor dropped by x^0
+        assertEquals(1.0, Calculator.compile("opt_record(6)^0").eval());
+        assertEquals(Arrays.asList(6.0), calls);
+        calls.clear();
+        // pure operands are still reordered
+        assertEquals("(opt_record(5.0)+(x*2.0))", optimize("opt_record(5)+2*x", "x"));
+    }
+
+    @Test
+    public void testValues() {
+        final CompiledExpression e = Calculator.compile("(2+x)^2*1+y^0.5-0+'e'*y^1", "x", "y");
+        final double x = 1.5;
+        final double y = 7;
+        assertEquals(Math.pow(2 + x, 2) + Math.pow(y, 0.5) + Math.E * y, e.eval(x, y), 1e-12);
+    }
+}
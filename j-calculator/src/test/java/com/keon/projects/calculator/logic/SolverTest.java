@@ -0,0 +1,46 @@
+package com.keon.projects.calculator.logic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class SolverTest {
+
+    @Test
+    public void testBroydenWithoutDerivatives() {
+        // a function without a derivative rule, so the Jacobian is estimated
+        final Node cube = new Node.Call("cube", Ifunction.unary(v -> v * v * v), new Node[] { new Node.Variable("y", 1) });
+        final String[] names = { "x", "y" };
+        final CompiledExpression[] definitions = {
+                new CompiledExpression("(cube(y)+10)/4", names,
+                        new Node.Binary(Operator.DIVIDE, new Node.Binary(Operator.PLUS, cube, new Node.Constant(10)), new Node.Constant(4))),
+                Calculator.compile("x - 1", new SymbolTable(names)) };
+        final double[] values = new double[2];
+        new Solver().solve(new int[] { 0, 1 }, definitions, names, values);
+        // 4x = (x-1)^3 + 10
+        assertEquals(4 * values[0], Math.pow(values[0] - 1, 3) + 10, 1e-9);
+        assertEquals(values[0] - 1, values[1], 1e-12);
+    }
+
+    @Test
+    public void testFailureLeavesValues() {
+        final String[] names = { "x", "y" };
+        final CompiledExpression[] definitions = { Calculator.compile("x^2 + y", new SymbolTable(names)), Calculator.compile("1", new SymbolTable(names)) };
+        final double[] values = { 5, -2 };
+        final Solver solver = new Solver().withMaxIterations(3);
+        assertThrows(CyclicEquationsException.class, () -> solver.solve(new int[] { 0, 1 }, definitions, names, values));
+        assertArrayEquals(new double[] { 5, -2 }, values);
+    }
+
+    @Test
+    public void testWithReturnsNewSolver() {
+        final Solver solver = new Solver();
+        final Solver tuned = solver.withTolerance(1e-6).withMaxIterations(10);
+        assertEquals(1e-12, solver.getTolerance());
+        assertEquals(100, solver.getMaxIterations());
+        assertEquals(1e-6, tuned.getTolerance());
+        assertEquals(10, tuned.getMaxIterations());
+    }
+}
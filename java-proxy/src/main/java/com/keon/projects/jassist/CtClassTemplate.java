@@ -80,7 +80,25 @@ public class CtClassTemplate implements CtTemplate<CtClassTemplate> {
         return createClass(CtClassTemplate.class.getClassLoader());
     }
 
+    /**
+     * Defines the class in the same class loader and package as the neighbor, which must be the package of this
+     * template's name. Unlike {@link #createClass()}, this does not need reflective access into
+     * {@link ClassLoader} on Java 9+, and the class may access package-private members of the neighbor's package.
+     */
+    public Class<?> createClass(final Class<?> neighbor) throws CannotCompileException {
+        final CtClass ctClass = makeClass();
+        try {
+            return ctClass.toClass(neighbor);
+        } finally {
+            ctClass.detach();
+        }
+    }
+
     private Class<?> createClass(final ClassLoader cl) throws CannotCompileException {
+        return makeClass().toClass(cl, null);
+    }
+
+    private CtClass makeClass() throws CannotCompileException {
         try {
 
             final ImportDiscoverer discoverer = autoImportDiscovery ? new ImportDiscovererImpl(CtClassTemplate.POOL) : new NoOpImportDiscoverer();
@@ -116,7 +134,7 @@ public class CtClassTemplate implements CtTemplate<CtClassTemplate> {
                 ctClass.writeFile(cdp);
             }
 
-            return ctClass.toClass(cl, null);
+            return ctClass;
 
         } catch (NotFoundException | IOException e) {
             throw new CannotCompileException(e);